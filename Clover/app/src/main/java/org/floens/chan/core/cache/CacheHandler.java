@@ -28,79 +28,134 @@ import org.floens.chan.utils.Logger;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
 
+import okio.ByteString;
+
+/**
+ * Disk cache for downloaded files.
+ * <p>
+ * Files are named after the SHA-256 digest of their key (usually the url), and stored in a
+ * two-level sharded layout: {@code <directory>/<h0>/<h1>/<hash>}, where {@code h0} and
+ * {@code h1} are the first two hex characters of the digest. This keeps the directories small
+ * and makes accidental collisions between keys practically impossible.
+ * <p>
+ * Additions and hits are recorded in a {@link CacheJournal}, which keeps the files in LRU order
+ * with their sizes. Trimming evicts from the journal instead of scanning the directories.
+ * <p>
+ * Older versions stored files flat in the root directory, named after
+ * {@link String#hashCode()}. These can't be mapped back to their keys and are removed on startup.
+ */
 public class CacheHandler {
     private static final String TAG = "CacheHandler";
-    private static final int TRIM_TRIES = 20;
+    private static final int SHARD_LEVELS = 2;
 
+    /**
+     * All journal operations and trimming run on this single thread.
+     */
     private final ExecutorService pool = Executors.newFixedThreadPool(1);
 
     private final File directory;
     private final long maxSize;
 
+    private final CacheJournal journal;
+
     /**
-     * An estimation of the current size of the directory. Used to check if trim must be run
-     * because the folder exceeds the maximum size.
+     * Hashes of the keys that are downloading. Their partial files are written to and are not
+     * trimmed. Also held while trim deletes a partial file, so that a download can't start
+     * resuming it at the same time.
      */
-    private AtomicLong size = new AtomicLong();
-    private AtomicBoolean trimRunning = new AtomicBoolean(false);
+    private final Set<String> activeDownloads = new HashSet<>();
 
     public CacheHandler(File directory, long maxSize) {
         this.directory = directory;
         this.maxSize = maxSize;
 
+        journal = new CacheJournal(directory);
+
         createDirectories();
-        backgroundRecalculateSize();
+        pool.submit(this::initialize);
     }
 
     @MainThread
     public boolean exists(String key) {
-        return get(key).exists();
+        return fileForHash(hash(key)).exists();
     }
 
     @MainThread
     public File get(String key) {
-        createDirectories();
+        File file = fileForHash(hash(key));
 
-        return new File(directory, hash(key));
+        File shard = file.getParentFile();
+        if (!shard.exists() && !shard.mkdirs()) {
+            Logger.e(TAG, "Unable to create file cache shard dir " + shard.getAbsolutePath());
+        }
+
+        return file;
     }
 
+    /**
+     * A download for the key started, its partial file is kept until
+     * {@link #downloadEnded(String)}.
+     */
     @MainThread
-    protected void fileWasAdded(File file) {
-        long adjustedSize = size.addAndGet(file.length());
-
-        if (adjustedSize > maxSize && trimRunning.compareAndSet(false, true)) {
-            pool.submit(() -> {
-                try {
-                    trim();
-                } catch (Exception e) {
-                    Logger.e(TAG, "Error trimming", e);
-                } finally {
-                    trimRunning.set(false);
-                }
-            });
+    protected void downloadStarted(String key) {
+        synchronized (activeDownloads) {
+            activeDownloads.add(hash(key));
         }
     }
 
+    @MainThread
+    protected void downloadEnded(String key) {
+        synchronized (activeDownloads) {
+            activeDownloads.remove(hash(key));
+        }
+    }
+
+    @MainThread
+    protected void fileWasAdded(File file) {
+        pool.submit(() -> {
+            try {
+                // A completed download replaces its partial file.
+                journal.recordRemove(FileCacheDownloader.partialFileFor(file));
+                journal.recordAdd(file);
+                trim();
+            } catch (Exception e) {
+                Logger.e(TAG, "Error trimming", e);
+            } finally {
+                journal.flush();
+            }
+        });
+    }
+
+    /**
+     * Mark the file as used, moving it to the back of the eviction order.
+     */
+    @MainThread
+    protected void fileWasAccessed(File file) {
+        pool.submit(() -> {
+            journal.recordHit(file);
+            journal.flush();
+        });
+    }
+
     @MainThread
     public void clearCache() {
         Logger.d(TAG, "Clearing cache");
 
-        if (directory.exists() && directory.isDirectory()) {
-            for (File file : directory.listFiles()) {
-                if (!file.delete()) {
-                    Logger.d(TAG, "Could not delete cache file while clearing cache " +
-                            file.getName());
-                }
+        for (File file : listCacheFiles()) {
+            if (!file.delete()) {
+                Logger.d(TAG, "Could not delete cache file while clearing cache " +
+                        file.getName());
             }
         }
 
-        recalculateSize();
+        pool.submit(journal::clear);
     }
 
     @MainThread
@@ -113,64 +168,189 @@ public class CacheHandler {
         }
     }
 
-    @MainThread
-    private void backgroundRecalculateSize() {
-        pool.submit(this::recalculateSize);
+    @WorkerThread
+    private void initialize() {
+        try {
+            removeLegacyFiles();
+
+            if (!journal.load()) {
+                rebuildJournal();
+            }
+
+            Logger.d(TAG, "Cache has " + journal.count() + " files, " + journal.size() + " bytes");
+
+            trim();
+        } catch (Exception e) {
+            Logger.e(TAG, "Error initializing cache", e);
+        } finally {
+            journal.flush();
+        }
     }
 
-    @AnyThread
-    private void recalculateSize() {
-        long calculatedSize = 0;
+    /**
+     * Create a journal from the files on disk, for the first start or when the journal was
+     * unreadable. Uses the last modified times for the initial order.
+     */
+    @WorkerThread
+    private void rebuildJournal() {
+        List<File> directoryFiles = listCacheFiles();
+
+        List<Pair<File, Long>> files = new ArrayList<>(directoryFiles.size());
+        for (File file : directoryFiles) {
+            if (file.getName().endsWith(FileCacheDownloader.PARTIAL_META_SUFFIX)) {
+                continue;
+            }
+            files.add(new Pair<>(file, file.lastModified()));
+        }
+
+        // Sort by oldest first.
+        Collections.sort(files, (o1, o2) -> Long.signum(o1.second - o2.second));
+
+        List<File> sorted = new ArrayList<>(files.size());
+        for (Pair<File, Long> file : files) {
+            sorted.add(file.first);
+        }
 
+        journal.rebuild(sorted);
+    }
+
+    /**
+     * Delete the files left over from the flat, hashCode named layout. Their names can't be
+     * mapped to the new digest based names, so they would otherwise only take up space.
+     */
+    @WorkerThread
+    private void removeLegacyFiles() {
         File[] files = directory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                calculatedSize += file.length();
+        if (files == null) {
+            return;
+        }
+
+        int removed = 0;
+        for (File file : files) {
+            if (file.isFile() && !CacheJournal.isJournalFile(file)) {
+                if (file.delete()) {
+                    removed++;
+                } else {
+                    Logger.e(TAG, "Could not delete legacy cache file " + file.getName());
+                }
             }
         }
 
-        size.set(calculatedSize);
+        if (removed > 0) {
+            Logger.i(TAG, "Removed " + removed + " legacy cache files");
+        }
+    }
+
+    /**
+     * List all files in the shard directories.
+     */
+    @AnyThread
+    private List<File> listCacheFiles() {
+        List<File> files = new ArrayList<>();
+        collectFiles(directory, 0, files);
+        return files;
+    }
+
+    @AnyThread
+    private void collectFiles(File dir, int level, List<File> out) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+
+        for (File child : children) {
+            if (level < SHARD_LEVELS) {
+                if (child.isDirectory()) {
+                    collectFiles(child, level + 1, out);
+                }
+            } else if (child.isFile()) {
+                out.add(child);
+            }
+        }
     }
 
+    /**
+     * Evict the least recently used files until the cache is below the maximum size.
+     * The most recent file and the partial files of running downloads are never evicted.
+     */
     @WorkerThread
     private void trim() {
-        File[] directoryFiles = directory.listFiles();
-
-        // Don't try to trim empty directories or just one file in it.
-        if (directoryFiles == null || directoryFiles.length <= 1) {
+        long size = journal.size();
+        if (size <= maxSize) {
             return;
         }
 
-        // Get all files with their last modified times.
-        List<Pair<File, Long>> files = new ArrayList<>(directoryFiles.length);
-        for (File file : directoryFiles) {
-            files.add(new Pair<>(file, file.lastModified()));
+        // Pick first, the journal can't change while iterating it.
+        List<String> evict = new ArrayList<>();
+        int candidates = journal.count() - 1;
+        for (Map.Entry<String, Long> entry : journal.entries()) {
+            if (size <= maxSize || candidates-- <= 0) {
+                break;
+            }
+
+            if (!isRunningPartial(entry.getKey())) {
+                evict.add(entry.getKey());
+                size -= entry.getValue();
+            }
         }
 
-        // Sort by oldest first.
-        Collections.sort(files, (o1, o2) -> Long.signum(o1.second - o2.second));
+        for (String name : evict) {
+            File file = fileForHash(name);
+
+            if (name.endsWith(FileCacheDownloader.PARTIAL_SUFFIX)) {
+                synchronized (activeDownloads) {
+                    // The download may have started since it was picked.
+                    if (isRunningPartial(name)) {
+                        continue;
+                    }
+
+                    delete(file);
+                    File meta = FileCacheDownloader.metaFileForPartial(file);
+                    if (meta.exists() && !meta.delete()) {
+                        Logger.e(TAG, "Failed to delete partial meta file for trim");
+                    }
+                }
+            } else {
+                delete(file);
+            }
 
-        // Trim as long as the directory size exceeds the threshold and we haven't reached
-        // the trim limit.
-        long workingSize = size.get();
-        for (int i = 0; workingSize >= maxSize && i < Math.min(files.size(), TRIM_TRIES); i++) {
-            File file = files.get(i).first;
+            journal.recordRemove(file);
+        }
+    }
+
+    @AnyThread
+    private boolean isRunningPartial(String name) {
+        if (!name.endsWith(FileCacheDownloader.PARTIAL_SUFFIX)) {
+            return false;
+        }
 
-            Logger.d(TAG, "Delete for trim " + file.getAbsolutePath());
-            workingSize -= file.length();
+        String hash = name.substring(0,
+                name.length() - FileCacheDownloader.PARTIAL_SUFFIX.length());
+        synchronized (activeDownloads) {
+            return activeDownloads.contains(hash);
+        }
+    }
 
-            boolean deleteResult = file.delete();
+    @WorkerThread
+    private void delete(File file) {
+        Logger.d(TAG, "Delete for trim " + file.getAbsolutePath());
 
-            if (!deleteResult) {
-                Logger.e(TAG, "Failed to delete cache file for trim");
-            }
+        if (!file.delete() && file.exists()) {
+            Logger.e(TAG, "Failed to delete cache file for trim");
         }
+    }
 
-        recalculateSize();
+    @AnyThread
+    private File fileForHash(String hash) {
+        File dir = directory;
+        for (int i = 0; i < SHARD_LEVELS; i++) {
+            dir = new File(dir, hash.substring(i, i + 1));
+        }
+        return new File(dir, hash);
     }
 
     @AnyThread
     private String hash(String key) {
-        return String.valueOf(key.hashCode());
+        return ByteString.encodeUtf8(key).sha256().hex();
     }
 }
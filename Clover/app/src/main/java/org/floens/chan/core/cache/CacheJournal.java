@@ -0,0 +1,321 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.cache;
+
+import androidx.annotation.WorkerThread;
+
+import org.floens.chan.utils.IOUtils;
+import org.floens.chan.utils.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Append-only access journal for the {@link CacheHandler}, similar to DiskLruCache.
+ * <p>
+ * Every line records one operation on a cache file, by file name:
+ * <pre>
+ *     ADD 3f2a... 123456
+ *     HIT 3f2a...
+ *     DEL 3f2a...
+ * </pre>
+ * Replaying the journal gives an in-memory index of all files with their sizes, ordered from
+ * least to most recently used. The journal is rewritten when it contains too many redundant
+ * lines.
+ * <p>
+ * Not thread safe, all calls must be made from the single {@link CacheHandler} worker thread.
+ */
+class CacheJournal {
+    private static final String TAG = "CacheJournal";
+
+    static final String JOURNAL_FILE = "journal";
+    static final String JOURNAL_FILE_TMP = "journal.tmp";
+
+    private static final String MAGIC = "clover.CacheJournal";
+    private static final String VERSION = "1";
+
+    private static final String ADD = "ADD";
+    private static final String HIT = "HIT";
+    private static final String DEL = "DEL";
+
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File journalFile;
+    private final File journalFileTmp;
+
+    /**
+     * File name to size, in access order.
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(0, 0.75f, true);
+    private long size = 0;
+    private int redundantOpCount = 0;
+
+    private Writer writer;
+
+    CacheJournal(File directory) {
+        journalFile = new File(directory, JOURNAL_FILE);
+        journalFileTmp = new File(directory, JOURNAL_FILE_TMP);
+    }
+
+    static boolean isJournalFile(File file) {
+        String name = file.getName();
+        return name.equals(JOURNAL_FILE) || name.equals(JOURNAL_FILE_TMP);
+    }
+
+    /**
+     * Read the journal into the index.
+     *
+     * @return {@code false} if there was no usable journal, the caller should then rebuild it
+     * with {@link #rebuild(Iterable)}.
+     */
+    @WorkerThread
+    boolean load() {
+        if (!journalFile.exists()) {
+            return false;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(journalFile), UTF_8));
+
+            if (!MAGIC.equals(reader.readLine()) || !VERSION.equals(reader.readLine())) {
+                Logger.w(TAG, "Journal header mismatch, rebuilding");
+                return false;
+            }
+
+            int lines = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                readLine(line);
+                lines++;
+            }
+            redundantOpCount = lines - entries.size();
+        } catch (IOException e) {
+            Logger.e(TAG, "Error reading journal, rebuilding", e);
+            return false;
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+
+        try {
+            writer = openWriter();
+        } catch (IOException e) {
+            Logger.e(TAG, "Error opening journal for append", e);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Discard the index and write a new journal from the given files, from oldest to newest.
+     */
+    @WorkerThread
+    void rebuild(Iterable<File> files) {
+        entries.clear();
+        size = 0;
+        for (File file : files) {
+            put(file.getName(), file.length());
+        }
+        compact();
+    }
+
+    @WorkerThread
+    void recordAdd(File file) {
+        String name = file.getName();
+        long length = file.length();
+        if (entries.containsKey(name)) {
+            redundantOpCount++;
+        }
+        put(name, length);
+        append(ADD + ' ' + name + ' ' + length);
+    }
+
+    @WorkerThread
+    void recordHit(File file) {
+        String name = file.getName();
+        if (entries.get(name) == null) {
+            // Not tracked, for example when the journal write failed after the download.
+            if (file.exists()) {
+                recordAdd(file);
+            }
+            return;
+        }
+        redundantOpCount++;
+        append(HIT + ' ' + name);
+    }
+
+    @WorkerThread
+    void recordRemove(File file) {
+        String name = file.getName();
+        if (remove(name)) {
+            redundantOpCount++;
+            append(DEL + ' ' + name);
+        }
+    }
+
+    /**
+     * The file names with their lengths, least recently used first. The journal must not be
+     * changed while iterating.
+     */
+    @WorkerThread
+    Iterable<Map.Entry<String, Long>> entries() {
+        return entries.entrySet();
+    }
+
+    @WorkerThread
+    int count() {
+        return entries.size();
+    }
+
+    @WorkerThread
+    long size() {
+        return size;
+    }
+
+    @WorkerThread
+    void clear() {
+        entries.clear();
+        size = 0;
+        compact();
+    }
+
+    /**
+     * Flush pending lines and compact the journal if it grew too large.
+     */
+    @WorkerThread
+    void flush() {
+        if (writer != null) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                Logger.e(TAG, "Error flushing journal", e);
+            }
+        }
+
+        if (redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD
+                && redundantOpCount >= entries.size()) {
+            compact();
+        }
+    }
+
+    private void readLine(String line) {
+        String[] parts = line.split(" ");
+        if (parts.length < 2) {
+            return;
+        }
+
+        String name = parts[1];
+        switch (parts[0]) {
+            case ADD:
+                if (parts.length == 3) {
+                    try {
+                        put(name, Long.parseLong(parts[2]));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+                break;
+            case HIT:
+                // Touch for the access order.
+                entries.get(name);
+                break;
+            case DEL:
+                remove(name);
+                break;
+        }
+    }
+
+    private void put(String name, long length) {
+        Long previous = entries.put(name, length);
+        if (previous != null) {
+            size -= previous;
+        }
+        size += length;
+    }
+
+    private boolean remove(String name) {
+        Long previous = entries.remove(name);
+        if (previous != null) {
+            size -= previous;
+            return true;
+        }
+        return false;
+    }
+
+    private void append(String line) {
+        if (writer == null) {
+            return;
+        }
+
+        try {
+            writer.write(line);
+            writer.write('\n');
+        } catch (IOException e) {
+            Logger.e(TAG, "Error writing to journal", e);
+        }
+    }
+
+    /**
+     * Write the index to a new journal and atomically replace the old one.
+     */
+    private void compact() {
+        IOUtils.closeQuietly(writer);
+        writer = null;
+
+        Writer tmpWriter = null;
+        try {
+            tmpWriter = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(journalFileTmp), UTF_8));
+            tmpWriter.write(MAGIC + '\n');
+            tmpWriter.write(VERSION + '\n');
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                tmpWriter.write(ADD + ' ' + entry.getKey() + ' ' + entry.getValue() + '\n');
+            }
+            tmpWriter.close();
+            tmpWriter = null;
+
+            if (!journalFileTmp.renameTo(journalFile)) {
+                throw new IOException("Could not rename journal");
+            }
+
+            redundantOpCount = 0;
+            writer = openWriter();
+        } catch (IOException e) {
+            Logger.e(TAG, "Error compacting journal", e);
+            IOUtils.closeQuietly(tmpWriter);
+        }
+    }
+
+    private Writer openWriter() throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(journalFile, true), UTF_8));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.cache;
+
+import androidx.annotation.MainThread;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+import okhttp3.Protocol;
+
+/**
+ * Throughput of the completed downloads, per protocol. Shown in the developer settings to
+ * compare HTTP/1.1 and HTTP/2 downloads.
+ */
+class DownloadMetrics {
+    private final Map<Protocol, Stats> stats = new EnumMap<>(Protocol.class);
+
+    @MainThread
+    void record(Protocol protocol, long bytes, long millis) {
+        Stats protocolStats = stats.get(protocol);
+        if (protocolStats == null) {
+            protocolStats = new Stats();
+            stats.put(protocol, protocolStats);
+        }
+
+        protocolStats.downloads++;
+        protocolStats.bytes += bytes;
+        protocolStats.millis += millis;
+    }
+
+    @MainThread
+    String getSummary() {
+        if (stats.isEmpty()) {
+            return "No downloads\n";
+        }
+
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<Protocol, Stats> entry : stats.entrySet()) {
+            Stats protocolStats = entry.getValue();
+            float kbPerSecond = protocolStats.millis == 0 ? 0f :
+                    (protocolStats.bytes / 1024f) / (protocolStats.millis / 1000f);
+            summary.append(String.format(Locale.ENGLISH, "%s: %d downloads, %.1f MB, %.0f KB/s\n",
+                    entry.getKey(), protocolStats.downloads,
+                    protocolStats.bytes / (1024f * 1024f), kbPerSecond));
+        }
+        return summary.toString();
+    }
+
+    private static class Stats {
+        int downloads;
+        long bytes;
+        long millis;
+    }
+}
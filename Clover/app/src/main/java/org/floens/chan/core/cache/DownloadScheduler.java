@@ -0,0 +1,251 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.cache;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the {@link FileCacheDownloader}s of the {@link FileCache} ordered by their
+ * {@link FileCache.Priority}.
+ * <p>
+ * Queued downloads are kept in a priority queue instead of in FIFO order, and are only handed
+ * to a thread once they can run: there is a free worker and their host is below the
+ * {@link HostStreamLimiter} limit. A download for a host that is at its limit stays queued
+ * without holding a worker, later downloads for other hosts are started first.
+ * <p>
+ * Visible downloads can also start on a separate lane, so that they start right away even when
+ * all workers or all streams to the host are taken by preloads or album saves.
+ * <p>
+ * The range requests of segmented downloads run on their own workers, at most as many as there
+ * are download workers, and count to the per host limit.
+ */
+class DownloadScheduler {
+    private final int poolSize;
+    private final ExecutorService workers;
+    private final ExecutorService segmentWorkers;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Guarded by lock.
+    private final Object lock = new Object();
+    private final TreeSet<Task> queue = new TreeSet<>();
+    private final HostStreamLimiter streamLimiter;
+    private int running;
+    private int runningSegments;
+    private boolean visibleLaneRunning;
+
+    /**
+     * @param poolSize          amount of downloads running at the same time, not counting the
+     *                          visible lane.
+     * @param maxStreamsPerHost amount of downloads running to the same host.
+     */
+    DownloadScheduler(int poolSize, int maxStreamsPerHost) {
+        this.poolSize = poolSize;
+        streamLimiter = new HostStreamLimiter(maxStreamsPerHost);
+
+        // Tasks are only executed when a worker is free, plus one for the visible lane.
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize + 1, poolSize + 1,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        executor.allowCoreThreadTimeOut(true);
+        workers = executor;
+
+        ThreadPoolExecutor segmentExecutor = new ThreadPoolExecutor(poolSize, poolSize,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        segmentExecutor.allowCoreThreadTimeOut(true);
+        segmentWorkers = segmentExecutor;
+    }
+
+    /**
+     * @param host the host the download connects to, for the per host limit. {@code null} for
+     *             no limit.
+     */
+    @AnyThread
+    Task submit(Runnable runnable, FileCache.Priority priority, String host) {
+        Task task = new Task(runnable, priority, host, sequence.incrementAndGet());
+        synchronized (lock) {
+            queue.add(task);
+            dispatch();
+        }
+        return task;
+    }
+
+    /**
+     * Move a queued task to a higher priority, for example when a preloading image becomes
+     * visible. Does nothing when the task already started or has a higher priority.
+     */
+    @AnyThread
+    void raisePriority(Task task, FileCache.Priority priority) {
+        synchronized (lock) {
+            if (priority.ordinal() >= task.priority.ordinal()) {
+                return;
+            }
+
+            // Remove before changing the priority, the queue is sorted by it.
+            if (queue.remove(task)) {
+                task.priority = priority;
+                queue.add(task);
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     * Change the amount of downloads running to the same host, for example when falling back
+     * from HTTP/2 to HTTP/1.1. Running downloads are not stopped.
+     */
+    @AnyThread
+    void setMaxStreamsPerHost(int maxStreamsPerHost) {
+        synchronized (lock) {
+            streamLimiter.setMaxStreamsPerHost(maxStreamsPerHost);
+            dispatch();
+        }
+    }
+
+    /**
+     * Take up to {@code wanted} extra streams to the host, for the range requests of a
+     * segmented download. Does not wait, segments only use streams that no queued download is
+     * waiting for. Every stream must be run with {@link #executeSegment} or given back with
+     * {@link #releaseSegments}.
+     *
+     * @return the amount of streams taken, can be {@code 0}.
+     */
+    @AnyThread
+    int acquireSegments(String host, int wanted) {
+        synchronized (lock) {
+            if (!queue.isEmpty()) {
+                return 0;
+            }
+
+            int granted = 0;
+            while (granted < wanted && runningSegments < poolSize &&
+                    streamLimiter.tryAcquire(host)) {
+                granted++;
+                runningSegments++;
+            }
+            return granted;
+        }
+    }
+
+    /**
+     * Run a range request on a stream taken with {@link #acquireSegments}, the stream is given
+     * back when it ends.
+     */
+    @AnyThread
+    void executeSegment(String host, Runnable segment) {
+        segmentWorkers.execute(() -> {
+            try {
+                segment.run();
+            } finally {
+                releaseSegments(host, 1);
+            }
+        });
+    }
+
+    @AnyThread
+    void releaseSegments(String host, int count) {
+        synchronized (lock) {
+            runningSegments -= count;
+            for (int i = 0; i < count; i++) {
+                streamLimiter.release(host);
+            }
+            dispatch();
+        }
+    }
+
+    // Must hold lock.
+    private void dispatch() {
+        Iterator<Task> iterator = queue.iterator();
+        while (iterator.hasNext() && (running < poolSize || !visibleLaneRunning)) {
+            Task task = iterator.next();
+            if (running < poolSize && streamLimiter.tryAcquire(task.host)) {
+                iterator.remove();
+                running++;
+                start(task, false);
+            } else if (task.priority == FileCache.Priority.VISIBLE && !visibleLaneRunning) {
+                // The lane is one stream over the limit, it is never taken by other downloads.
+                iterator.remove();
+                streamLimiter.acquire(task.host);
+                visibleLaneRunning = true;
+                start(task, true);
+            }
+        }
+    }
+
+    // Must hold lock.
+    private void start(Task task, boolean visibleLane) {
+        workers.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                synchronized (lock) {
+                    if (visibleLane) {
+                        visibleLaneRunning = false;
+                    } else {
+                        running--;
+                    }
+                    streamLimiter.release(task.host);
+                    dispatch();
+                }
+            }
+        });
+    }
+
+    static class Task extends FutureTask<Void> implements Comparable<Task> {
+        // Guarded by the scheduler lock.
+        private FileCache.Priority priority;
+        private final String host;
+        private final long sequence;
+
+        private Task(Runnable runnable, FileCache.Priority priority, String host,
+                     long sequence) {
+            super(runnable, null);
+            this.priority = priority;
+            this.host = host;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Higher priorities first. Visible images and preloads are taken newest first, the
+         * image the user swiped to last is the one they are looking at. Bulk saves keep their
+         * order.
+         */
+        @Override
+        public int compareTo(@NonNull Task o) {
+            int c = priority.compareTo(o.priority);
+            if (c != 0) {
+                return c;
+            }
+
+            if (priority == FileCache.Priority.BULK) {
+                return Long.compare(sequence, o.sequence);
+            } else {
+                return Long.compare(o.sequence, sequence);
+            }
+        }
+    }
+}
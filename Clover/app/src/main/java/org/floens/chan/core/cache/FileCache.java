@@ -19,15 +19,16 @@ package org.floens.chan.core.cache;
 
 import androidx.annotation.MainThread;
 
+import org.floens.chan.core.model.PostImage;
 import org.floens.chan.utils.Logger;
-import org.floens.chan.utils.Time;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.OkHttpClient;
@@ -38,30 +39,73 @@ public class FileCache implements FileCacheDownloader.Callback {
     private static final int TIMEOUT = 10000;
     private static final int DOWNLOAD_POOL_SIZE = 2;
 
-    private final ExecutorService downloadPool = Executors.newFixedThreadPool(DOWNLOAD_POOL_SIZE);
+    private static final int HTTP2_DOWNLOAD_POOL_SIZE = 6;
+    private static final int HTTP2_MAX_STREAMS_PER_HOST = 4;
+    private static final int HTTP2_PING_INTERVAL = 15000;
+    private static final int HTTP2_FAILURE_LIMIT = 2;
+
+    private final DownloadScheduler downloadScheduler;
     private String userAgent;
     protected OkHttpClient httpClient;
 
+    // Main thread only.
+    private int http2Failures = 0;
+    private final DownloadMetrics downloadMetrics = new DownloadMetrics();
+
     private final CacheHandler cacheHandler;
 
-    private List<FileCacheDownloader> downloaders = new ArrayList<>();
+    private final Map<String, FileCacheDownloader> downloaders = new HashMap<>();
+
+    /**
+     * Order in which queued downloads are started, highest first.
+     */
+    public enum Priority {
+        /**
+         * The image the user is looking at.
+         */
+        VISIBLE,
+        /**
+         * Images loaded ahead of time, like the next image in the viewer.
+         */
+        PRELOAD,
+        /**
+         * Album saves and other bulk downloads.
+         */
+        BULK
+    }
 
-    public FileCache(File directory, long maxSize, String userAgent) {
+    /**
+     * @param http2 download over HTTP/2 when the server supports it. All downloads to a host are
+     *              then multiplexed over one connection, with more downloads running at the same
+     *              time. Falls back to HTTP/1.1 after repeated stream resets or timeouts.
+     */
+    public FileCache(File directory, long maxSize, String userAgent, OkHttpClient okHttpClient,
+                     boolean http2) {
         this.userAgent = userAgent;
 
-        httpClient = new OkHttpClient.Builder()
+        // Shorter timeouts, the connection pool, dns and proxy are shared with the app client.
+        OkHttpClient.Builder builder = okHttpClient.newBuilder()
                 .connectTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
                 .readTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .writeTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                // Disable SPDY, causes reproducible timeouts, only one download at the same time and other fun stuff
-                .protocols(Collections.singletonList(Protocol.HTTP_1_1))
-                .build();
+                .writeTimeout(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        if (http2) {
+            // Pings detect a dead connection before all streams on it time out.
+            builder.protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .pingInterval(HTTP2_PING_INTERVAL, TimeUnit.MILLISECONDS);
+            downloadScheduler = new DownloadScheduler(HTTP2_DOWNLOAD_POOL_SIZE,
+                    HTTP2_MAX_STREAMS_PER_HOST);
+        } else {
+            downloadScheduler = new DownloadScheduler(DOWNLOAD_POOL_SIZE, Integer.MAX_VALUE);
+        }
+
+        httpClient = builder.build();
 
         cacheHandler = new CacheHandler(directory, maxSize);
     }
 
     public void clearCache() {
-        for (FileCacheDownloader downloader : downloaders) {
+        for (FileCacheDownloader downloader : new ArrayList<>(downloaders.values())) {
             downloader.cancel();
         }
 
@@ -81,33 +125,84 @@ public class FileCache implements FileCacheDownloader.Callback {
      */
     @MainThread
     public FileCacheDownloader downloadFile(String url, FileCacheListener listener) {
-        FileCacheDownloader runningDownloaderForKey = getDownloaderByKey(url);
+        return downloadFile(url, Priority.VISIBLE, listener);
+    }
+
+    /**
+     * Like {@link #downloadFile(String, FileCacheListener)}, with the priority for the download
+     * queue. A running or queued download for the same url is moved up if the given priority is
+     * higher.
+     *
+     * @param url      the url to download.
+     * @param priority the priority of the download.
+     * @param listener listener to execute callbacks on.
+     * @return {@code null} if in the cache, {@link FileCacheDownloader} otherwise.
+     */
+    @MainThread
+    public FileCacheDownloader downloadFile(String url, Priority priority,
+                                            FileCacheListener listener) {
+        return downloadFile(url, url, priority, listener);
+    }
+
+    @MainThread
+    public FileCacheDownloader downloadFile(PostImage postImage, FileCacheListener listener) {
+        return downloadFile(postImage, Priority.VISIBLE, listener);
+    }
+
+    /**
+     * Download the file of a post image. When the site sent a MD5 for the file it is cached by
+     * that hash instead of the url, so that a repost under a different url is served from the
+     * cache without a network request.
+     *
+     * @param postImage the image to download.
+     * @param priority  the priority of the download.
+     * @param listener  listener to execute callbacks on.
+     * @return {@code null} if in the cache, {@link FileCacheDownloader} otherwise.
+     */
+    @MainThread
+    public FileCacheDownloader downloadFile(PostImage postImage, Priority priority,
+                                            FileCacheListener listener) {
+        String url = postImage.imageUrl.toString();
+        String key = cacheKey(postImage);
+
+        // Files cached before the hash was used are stored by url.
+        if (!key.equals(url) && getDownloaderByKey(key) == null && !exists(key) && exists(url)) {
+            key = url;
+        }
+
+        return downloadFile(url, key, priority, listener);
+    }
+
+    @MainThread
+    private FileCacheDownloader downloadFile(String url, String key, Priority priority,
+                                             FileCacheListener listener) {
+        FileCacheDownloader runningDownloaderForKey = getDownloaderByKey(key);
         if (runningDownloaderForKey != null) {
             runningDownloaderForKey.addListener(listener);
+            runningDownloaderForKey.raisePriority(priority);
             return runningDownloaderForKey;
         }
 
-        File file = get(url);
+        File file = get(key);
         if (file.exists()) {
             handleFileImmediatelyAvailable(listener, file);
             return null;
         } else {
-            return handleStartDownload(listener, file, url);
+            return handleStartDownload(listener, file, url, key, priority);
         }
     }
 
     public FileCacheDownloader getDownloaderByKey(String key) {
-        for (FileCacheDownloader downloader : downloaders) {
-            if (downloader.getUrl().equals(key)) {
-                return downloader;
-            }
-        }
-        return null;
+        return downloaders.get(key);
     }
 
     @Override
     public void downloaderFinished(FileCacheDownloader fileCacheDownloader) {
-        downloaders.remove(fileCacheDownloader);
+        // A cancelled downloader may finish after a new one for the same key was started.
+        if (downloaders.get(fileCacheDownloader.getKey()) == fileCacheDownloader) {
+            downloaders.remove(fileCacheDownloader.getKey());
+            cacheHandler.downloadEnded(fileCacheDownloader.getKey());
+        }
     }
 
     @Override
@@ -115,30 +210,84 @@ public class FileCache implements FileCacheDownloader.Callback {
         cacheHandler.fileWasAdded(file);
     }
 
+    @Override
+    public void downloaderKeptPartialFile(File partial) {
+        // Tracked like any other file so that it gets evicted when it is not resumed.
+        cacheHandler.fileWasAdded(partial);
+    }
+
+    @Override
+    public void downloaderMeasured(Protocol protocol, long bytes, long millis) {
+        downloadMetrics.record(protocol, bytes, millis);
+
+        if (protocol == Protocol.HTTP_2) {
+            // Only consecutive failures count, a working download means the connection is fine.
+            http2Failures = 0;
+        }
+    }
+
+    @Override
+    public void downloaderProtocolFailed(IOException e) {
+        if (!httpClient.protocols().contains(Protocol.HTTP_2)) {
+            return;
+        }
+
+        http2Failures++;
+        if (http2Failures >= HTTP2_FAILURE_LIMIT) {
+            // The reason SPDY was disabled in the first place, don't keep failing downloads.
+            Logger.w(TAG, "Too many HTTP/2 failures, falling back to HTTP/1.1", e);
+            httpClient = httpClient.newBuilder()
+                    .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                    .pingInterval(0, TimeUnit.MILLISECONDS)
+                    .build();
+            // Every download is a connection again, keep the old amount per host.
+            downloadScheduler.setMaxStreamsPerHost(DOWNLOAD_POOL_SIZE);
+        }
+    }
+
+    /**
+     * Download counts and throughput per protocol, for the developer settings.
+     */
+    @MainThread
+    public String getDownloadSummary() {
+        return downloadMetrics.getSummary();
+    }
+
     public boolean exists(String key) {
         return cacheHandler.exists(key);
     }
 
+    public boolean exists(PostImage postImage) {
+        return exists(cacheKey(postImage)) || exists(postImage.imageUrl.toString());
+    }
+
     public File get(String key) {
         return cacheHandler.get(key);
     }
 
     private void handleFileImmediatelyAvailable(FileCacheListener listener, File file) {
-        // TODO: setLastModified doesn't seem to work on Android...
-        if (!file.setLastModified(Time.get())) {
-            Logger.e(TAG, "Could not set last modified time on file");
-        }
+        cacheHandler.fileWasAccessed(file);
         listener.onSuccess(file);
         listener.onEnd();
     }
 
     private FileCacheDownloader handleStartDownload(
-            FileCacheListener listener, File file, String url) {
-        FileCacheDownloader downloader = FileCacheDownloader.fromCallbackClientUrlOutputUserAgent(
-                this, httpClient, url, file, userAgent);
+            FileCacheListener listener, File file, String url, String key, Priority priority) {
+        FileCacheDownloader downloader =
+                FileCacheDownloader.fromCallbackClientUrlKeyOutputUserAgent(
+                        this, httpClient, url, key, file, userAgent);
         downloader.addListener(listener);
-        downloader.execute(downloadPool);
-        downloaders.add(downloader);
+        // Before it runs, so that trim does not delete the partial file it resumes.
+        cacheHandler.downloadStarted(key);
+        downloader.execute(downloadScheduler, priority);
+        downloaders.put(key, downloader);
         return downloader;
     }
+
+    private static String cacheKey(PostImage postImage) {
+        if (postImage.md5 != null && !postImage.md5.isEmpty()) {
+            return "md5:" + postImage.md5;
+        }
+        return postImage.imageUrl.toString();
+    }
 }
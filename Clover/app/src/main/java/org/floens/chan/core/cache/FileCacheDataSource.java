@@ -0,0 +1,122 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.cache;
+
+import android.net.Uri;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BaseDataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+
+import org.floens.chan.utils.IOUtils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * ExoPlayer {@link com.google.android.exoplayer2.upstream.DataSource} that reads the file of a
+ * running {@link FileCacheDownloader} while it is being written. Reads block until the requested
+ * bytes are downloaded. The download itself is untouched and ends up as a normal cache entry.
+ */
+public class FileCacheDataSource extends BaseDataSource {
+    private final FileCacheDownloader downloader;
+
+    private Uri uri;
+    private RandomAccessFile file;
+    private long position;
+    private long bytesRemaining;
+    private boolean opened;
+
+    public FileCacheDataSource(FileCacheDownloader downloader) {
+        super(true);
+        this.downloader = downloader;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        uri = dataSpec.uri;
+        transferInitializing(dataSpec);
+
+        long length = downloader.awaitStreamLength();
+        file = downloader.openStreamFile();
+        position = dataSpec.position;
+
+        if (dataSpec.length != C.LENGTH_UNSET) {
+            bytesRemaining = dataSpec.length;
+        } else if (length >= 0) {
+            bytesRemaining = length - position;
+        } else {
+            bytesRemaining = C.LENGTH_UNSET;
+        }
+
+        opened = true;
+        transferStarted(dataSpec);
+
+        return bytesRemaining;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        if (readLength == 0) {
+            return 0;
+        }
+        if (bytesRemaining == 0) {
+            return C.RESULT_END_OF_INPUT;
+        }
+
+        long available = downloader.awaitAvailable(position);
+        if (available < 0) {
+            return C.RESULT_END_OF_INPUT;
+        }
+
+        long toRead = Math.min(readLength, available);
+        if (bytesRemaining != C.LENGTH_UNSET) {
+            toRead = Math.min(toRead, bytesRemaining);
+        }
+
+        file.seek(position);
+        int read = file.read(buffer, offset, (int) toRead);
+        if (read == -1) {
+            return C.RESULT_END_OF_INPUT;
+        }
+
+        position += read;
+        if (bytesRemaining != C.LENGTH_UNSET) {
+            bytesRemaining -= read;
+        }
+        bytesTransferred(read);
+
+        return read;
+    }
+
+    @Override
+    public Uri getUri() {
+        return uri;
+    }
+
+    @Override
+    public void close() {
+        uri = null;
+        IOUtils.closeQuietly(file);
+        file = null;
+        if (opened) {
+            opened = false;
+            transferEnded();
+        }
+    }
+}
@@ -30,20 +30,32 @@ import org.floens.chan.utils.Logger;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import okhttp3.Call;
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 import okhttp3.internal.Util;
+import okhttp3.internal.http2.StreamResetException;
 import okio.Buffer;
 import okio.BufferedSink;
+import okio.BufferedSource;
 import okio.Okio;
 import okio.Source;
 
@@ -52,9 +64,20 @@ public class FileCacheDownloader implements Runnable {
     private static final long BUFFER_SIZE = 8192;
     private static final long NOTIFY_SIZE = BUFFER_SIZE * 8;
 
+    private static final int SEGMENT_COUNT = 4;
+    private static final long MIN_SEGMENT_SIZE = 512 * 1024;
+
+    static final String PARTIAL_SUFFIX = ".part";
+    private static final String META_SUFFIX = ".meta";
+    static final String PARTIAL_META_SUFFIX = PARTIAL_SUFFIX + META_SUFFIX;
+
     private final OkHttpClient httpClient;
     private final String url;
+    private final String host;
+    private final String key;
     private final File output;
+    private final File partial;
+    private final File partialMeta;
     private final String userAgent;
     private final Handler handler;
 
@@ -65,32 +88,83 @@ public class FileCacheDownloader implements Runnable {
     // Main and worker thread.
     private AtomicBoolean running = new AtomicBoolean(false);
     private AtomicBoolean cancel = new AtomicBoolean(false);
-    private Future<?> future;
+    private DownloadScheduler scheduler;
+    private DownloadScheduler.Task future;
 
     // Worker thread.
     private Call call;
     private ResponseBody body;
-
-    static FileCacheDownloader fromCallbackClientUrlOutputUserAgent(
-            Callback callback, OkHttpClient httpClient, String url,
+    private Protocol protocol;
+    private long startTime;
+    private long resumeOffset;
+    private boolean acceptRanges;
+    private String remoteValidator;
+    private boolean segmented;
+
+    // Worker and stream reader threads, guarded by streamLock.
+    private final Object streamLock = new Object();
+    private StreamState streamState = StreamState.PENDING;
+    private long streamLength = -1;
+    private long[] streamRangeStarts;
+    private long[] streamRangeLimits;
+    private long[] streamRangeWritten;
+
+    static FileCacheDownloader fromCallbackClientUrlKeyOutputUserAgent(
+            Callback callback, OkHttpClient httpClient, String url, String key,
             File output, String userAgent) {
-        return new FileCacheDownloader(callback, httpClient, url, output, userAgent);
+        return new FileCacheDownloader(callback, httpClient, url, key, output, userAgent);
     }
 
     private FileCacheDownloader(Callback callback, OkHttpClient httpClient,
-                                String url, File output, String userAgent) {
+                                String url, String key, File output, String userAgent) {
         this.callback = callback;
         this.httpClient = httpClient;
         this.url = url;
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        this.host = httpUrl != null ? httpUrl.host() : null;
+        this.key = key;
         this.output = output;
+        this.partial = partialFileFor(output);
+        this.partialMeta = partialMetaFileFor(output);
         this.userAgent = userAgent;
 
         handler = new Handler(Looper.getMainLooper());
     }
 
+    /**
+     * The file the download is written to until it is complete. Kept on failure or cancel so
+     * that the next download of the same url can resume with a range request.
+     */
+    @AnyThread
+    static File partialFileFor(File output) {
+        return new File(output.getParentFile(), output.getName() + PARTIAL_SUFFIX);
+    }
+
+    /**
+     * Holds the ETag or Last-Modified validator for the partial file.
+     */
+    @AnyThread
+    static File partialMetaFileFor(File output) {
+        return metaFileForPartial(partialFileFor(output));
+    }
+
+    @AnyThread
+    static File metaFileForPartial(File partial) {
+        return new File(partial.getParentFile(), partial.getName() + META_SUFFIX);
+    }
+
     @MainThread
-    public void execute(ExecutorService executor) {
-        future = executor.submit(this);
+    void execute(DownloadScheduler scheduler, FileCache.Priority priority) {
+        this.scheduler = scheduler;
+        future = scheduler.submit(this, priority, host);
+    }
+
+    /**
+     * Move this download up in the queue if it did not start yet.
+     */
+    @MainThread
+    void raisePriority(FileCache.Priority priority) {
+        scheduler.raisePriority(future, priority);
     }
 
     @MainThread
@@ -98,6 +172,14 @@ public class FileCacheDownloader implements Runnable {
         return url;
     }
 
+    /**
+     * The key the file is cached under, the url or a content hash.
+     */
+    @MainThread
+    public String getKey() {
+        return key;
+    }
+
     @AnyThread
     public Future<?> getFuture() {
         return future;
@@ -145,11 +227,7 @@ public class FileCacheDownloader implements Runnable {
     public void run() {
         log("start");
         running.set(true);
-        execute();
-    }
 
-    @WorkerThread
-    private void execute() {
         Closeable sourceCloseable = null;
         Closeable sinkCloseable = null;
 
@@ -158,21 +236,43 @@ public class FileCacheDownloader implements Runnable {
 
             ResponseBody body = getBody();
 
-            Source source = body.source();
-            sourceCloseable = source;
+            int segments = segmentCount(body);
+            // The range requests are streams to the same host, only take the ones that are free.
+            int extraSegments = segments > 1 ? scheduler.acquireSegments(host, segments - 1) : 0;
+            if (extraSegments > 0) {
+                segmented = true;
+                pipeSegmented(body, extraSegments + 1);
+            } else {
+                Source source = body.source();
+                sourceCloseable = source;
 
-            BufferedSink sink = Okio.buffer(Okio.sink(output));
-            sinkCloseable = sink;
+                BufferedSink sink = Okio.buffer(resumeOffset > 0 ?
+                        Okio.appendingSink(partial) : Okio.sink(partial));
+                sinkCloseable = sink;
 
-            checkCancel();
+                checkCancel();
 
-            log("got input stream");
+                log("got input stream" +
+                        (resumeOffset > 0 ? ", resuming at " + resumeOffset : ""));
 
-            pipeBody(source, sink);
+                pipeBody(source, sink);
+            }
+
+            synchronized (streamLock) {
+                if (!partial.renameTo(output)) {
+                    throw new IOException("Could not rename partial file to output");
+                }
+                streamEnd(StreamState.DONE);
+            }
+            deletePartialMeta();
 
             log("done");
 
+            final Protocol finalProtocol = protocol;
+            final long bytes = output.length() - resumeOffset;
+            final long millis = System.currentTimeMillis() - startTime;
             post(() -> {
+                callback.downloaderMeasured(finalProtocol, bytes, millis);
                 callback.downloaderAddedFile(output);
                 callback.downloaderFinished(this);
                 for (FileCacheListener callback : listeners) {
@@ -183,10 +283,13 @@ public class FileCacheDownloader implements Runnable {
         } catch (IOException e) {
             boolean isNotFound = false;
             boolean cancelled = false;
+            // A segmented download has gaps and can't be resumed.
+            boolean keepPartial = !segmented;
             if (e instanceof HttpCodeIOException) {
                 int code = ((HttpCodeIOException) e).code;
                 log("exception: http error, code: " + code, e);
                 isNotFound = code == 404;
+                keepPartial = false;
             } else if (e instanceof CancelException) {
                 // Don't log the stack.
                 log("exception: cancelled");
@@ -195,10 +298,28 @@ public class FileCacheDownloader implements Runnable {
                 log("exception", e);
             }
 
+            // Stream resets and read timeouts are how a bad HTTP/2 connection shows up.
+            final IOException protocolFailure =
+                    !cancelled && isHttp2Attempt() &&
+                            (e instanceof StreamResetException ||
+                                    e instanceof SocketTimeoutException) ? e : null;
+
+            synchronized (streamLock) {
+                streamEnd(StreamState.FAILED);
+            }
+
             final boolean finalIsNotFound = isNotFound;
             final boolean finalCancelled = cancelled;
+            final boolean finalKeepPartial = keepPartial;
             post(() -> {
-                purgeOutput();
+                if (protocolFailure != null) {
+                    callback.downloaderProtocolFailed(protocolFailure);
+                }
+                if (!finalKeepPartial) {
+                    purgeOutput();
+                } else if (partial.exists()) {
+                    callback.downloaderKeptPartialFile(partial);
+                }
                 for (FileCacheListener callback : listeners) {
                     if (finalCancelled) {
                         callback.onCancel();
@@ -224,19 +345,49 @@ public class FileCacheDownloader implements Runnable {
         }
     }
 
+    /**
+     * Execute the request, resuming from the partial file if there is one with a validator from
+     * the previous attempt. Sets {@link #resumeOffset} to the amount of bytes that are already
+     * in the partial file and should be kept.
+     */
     @WorkerThread
     private ResponseBody getBody() throws IOException {
-        Request request = new Request.Builder()
+        resumeOffset = 0;
+        String validator = partial.length() > 0 ? readPartialMeta() : null;
+
+        Request.Builder requestBuilder = new Request.Builder()
                 .url(url)
-                .header("User-Agent", userAgent)
-                .build();
+                .header("User-Agent", userAgent);
+
+        if (validator != null) {
+            long offset = partial.length();
+            requestBuilder.header("Range", "bytes=" + offset + "-")
+                    .header("If-Range", validator);
+            resumeOffset = offset;
+        }
 
-        call = httpClient.newBuilder()
-                .proxy(ChanSettings.getProxy())
-                .build()
-                .newCall(request);
+        call = httpClient.newCall(requestBuilder.build());
 
+        startTime = System.currentTimeMillis();
         Response response = call.execute();
+        protocol = response.protocol();
+
+        if (resumeOffset > 0) {
+            if (response.code() == 416 ||
+                    (response.code() == 206 && !contentRangeStartsAt(response, resumeOffset))) {
+                // The partial file does not match the remote file anymore, start over.
+                log("unexpected range response, restarting");
+                Util.closeQuietly(response);
+                purgeOutput();
+                return getBody();
+            }
+
+            if (response.code() != 206) {
+                // The server ignored the range or the file changed, overwrite the partial file.
+                resumeOffset = 0;
+            }
+        }
+
         if (!response.isSuccessful()) {
             throw new HttpCodeIOException(response.code());
         }
@@ -248,6 +399,13 @@ public class FileCacheDownloader implements Runnable {
             throw new IOException("body == null");
         }
 
+        acceptRanges = "bytes".equalsIgnoreCase(response.header("Accept-Ranges"));
+
+        if (resumeOffset == 0) {
+            remoteValidator = validatorFor(response);
+            writePartialMeta(remoteValidator);
+        }
+
         checkCancel();
 
         return body;
@@ -256,16 +414,26 @@ public class FileCacheDownloader implements Runnable {
     @WorkerThread
     private void pipeBody(Source source, BufferedSink sink) throws IOException {
         long contentLength = body.contentLength();
+        if (contentLength > 0) {
+            contentLength += resumeOffset;
+        }
 
         long read;
-        long total = 0;
-        long notifyTotal = 0;
+        long total = resumeOffset;
+        long notifyTotal = total;
+
+        streamBegin(contentLength, new long[]{0},
+                new long[]{contentLength > 0 ? contentLength : Long.MAX_VALUE},
+                new long[]{resumeOffset});
 
         Buffer buffer = new Buffer();
 
         while ((read = source.read(buffer, BUFFER_SIZE)) != -1) {
             sink.write(buffer, read);
+            // Write through, stream readers read from the file.
+            sink.emit();
             total += read;
+            streamWritten(0, total);
 
             if (total >= notifyTotal + NOTIFY_SIZE) {
                 notifyTotal = total;
@@ -284,6 +452,311 @@ public class FileCacheDownloader implements Runnable {
         body = null;
     }
 
+    /**
+     * Split large downloads into byte ranges that are fetched in parallel, when the server
+     * supports it. See {@link ChanSettings#segmentedDownloadMinSizeKb}.
+     *
+     * @return the amount of ranges to split the download in, {@code 1} to not split it.
+     */
+    @WorkerThread
+    private int segmentCount(ResponseBody body) {
+        // Segments would be streams on the same HTTP/2 connection, that does not gain anything.
+        if (protocol == Protocol.HTTP_2) {
+            return 1;
+        }
+
+        long threshold = ChanSettings.segmentedDownloadMinSizeKb.get() * 1024L;
+        long contentLength = body.contentLength();
+        if (resumeOffset == 0 && acceptRanges && threshold > 0 &&
+                contentLength >= threshold && contentLength >= MIN_SEGMENT_SIZE * 2) {
+            return (int) Math.min(SEGMENT_COUNT, contentLength / MIN_SEGMENT_SIZE);
+        }
+        return 1;
+    }
+
+    /**
+     * Download the file in ranges at the same time, written with positional writes into the
+     * preallocated partial file. The first range is read from the response that is already
+     * open, the others are requested with range requests. The streams for the range requests
+     * are taken from the scheduler by the caller, each is given back when its range ends.
+     */
+    @WorkerThread
+    private void pipeSegmented(ResponseBody firstBody, int segments) throws IOException {
+        long contentLength = firstBody.contentLength();
+        long segmentSize = (contentLength + segments - 1) / segments;
+
+        log("segmented download of " + contentLength + " bytes in " + segments + " segments");
+
+        RandomAccessFile file = new RandomAccessFile(partial, "rw");
+        List<Future<?>> futures = new ArrayList<>(segments - 1);
+        List<Call> segmentCalls = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean failed = new AtomicBoolean(false);
+        AtomicLong total = new AtomicLong();
+        int submitted = 0;
+        try {
+            file.setLength(contentLength);
+            FileChannel channel = file.getChannel();
+
+            long[] starts = new long[segments];
+            long[] limits = new long[segments];
+            for (int i = 0; i < segments; i++) {
+                starts[i] = i * segmentSize;
+                limits[i] = Math.min(contentLength, starts[i] + segmentSize);
+            }
+            streamBegin(contentLength, starts, limits, starts.clone());
+
+            for (int i = 1; i < segments; i++) {
+                final int segment = i;
+                final long start = starts[i];
+                final long end = limits[i] - 1;
+                FutureTask<Void> segmentFuture = new FutureTask<>(() -> {
+                    try {
+                        downloadSegment(segment, channel, start, end, segmentCalls, failed,
+                                total, contentLength);
+                    } catch (IOException e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                    return null;
+                });
+                // Run through a runnable, the stream is also given back when the future was
+                // cancelled before it ran.
+                scheduler.executeSegment(host, segmentFuture);
+                futures.add(segmentFuture);
+                submitted++;
+            }
+
+            try {
+                writeSegment(0, firstBody.source(), channel, 0, segmentSize - 1, failed,
+                        total, contentLength);
+            } catch (IOException e) {
+                failed.set(true);
+                throw e;
+            }
+
+            call = null;
+            Util.closeQuietly(firstBody);
+            body = null;
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        } finally {
+            scheduler.releaseSegments(host, segments - 1 - submitted);
+
+            if (failed.get()) {
+                synchronized (segmentCalls) {
+                    for (Call segmentCall : segmentCalls) {
+                        segmentCall.cancel();
+                    }
+                }
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+            }
+
+            Util.closeQuietly(file);
+        }
+    }
+
+    @WorkerThread
+    private void downloadSegment(int segment, FileChannel channel, long start, long end,
+                                 List<Call> calls, AtomicBoolean failed, AtomicLong total,
+                                 long contentLength) throws IOException {
+        Request.Builder requestBuilder = new Request.Builder()
+                .url(url)
+                .header("User-Agent", userAgent)
+                .header("Range", "bytes=" + start + "-" + end);
+        if (remoteValidator != null) {
+            requestBuilder.header("If-Range", remoteValidator);
+        }
+
+        Call segmentCall = httpClient.newCall(requestBuilder.build());
+        calls.add(segmentCall);
+
+        Response response = segmentCall.execute();
+        try {
+            // Anything else than the exact range means the file changed or ranges are not
+            // supported after all.
+            if (response.code() != 206 || !contentRangeStartsAt(response, start)) {
+                throw new IOException("Unexpected segment response " + response.code());
+            }
+
+            ResponseBody segmentBody = response.body();
+            if (segmentBody == null) {
+                throw new IOException("body == null");
+            }
+
+            writeSegment(segment, segmentBody.source(), channel, start, end, failed, total,
+                    contentLength);
+        } finally {
+            Util.closeQuietly(response);
+        }
+    }
+
+    @WorkerThread
+    private void writeSegment(int segment, BufferedSource source, FileChannel channel,
+                              long start, long end, AtomicBoolean failed, AtomicLong total,
+                              long contentLength) throws IOException {
+        byte[] bytes = new byte[(int) BUFFER_SIZE];
+        long position = start;
+        long remaining = end - start + 1;
+        long notifyTotal = 0;
+
+        while (remaining > 0) {
+            int read = source.read(bytes, 0, (int) Math.min(bytes.length, remaining));
+            if (read == -1) {
+                throw new IOException("Segment ended early");
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, read);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            remaining -= read;
+            streamWritten(segment, position);
+
+            long downloaded = total.addAndGet(read);
+            if (position - start >= notifyTotal + NOTIFY_SIZE) {
+                notifyTotal = position - start;
+                postProgress(downloaded, contentLength);
+            }
+
+            checkCancel();
+            if (failed.get()) {
+                throw new IOException("Other segment failed");
+            }
+        }
+    }
+
+    /**
+     * Wait until the download has started and return the length of the file, or {@code -1} if
+     * the server did not send one. For {@link FileCacheDataSource}.
+     *
+     * @throws IOException when the download failed or was cancelled.
+     */
+    @WorkerThread
+    long awaitStreamLength() throws IOException {
+        synchronized (streamLock) {
+            while (streamState == StreamState.PENDING && streamRangeStarts == null) {
+                waitForStream();
+            }
+            if (streamState == StreamState.FAILED) {
+                throw new IOException("Download failed");
+            }
+            if (streamState == StreamState.DONE && streamLength < 0) {
+                return output.length();
+            }
+            return streamLength;
+        }
+    }
+
+    /**
+     * Open the file that is being downloaded, or the cache file if the download completed.
+     */
+    @WorkerThread
+    RandomAccessFile openStreamFile() throws IOException {
+        synchronized (streamLock) {
+            return new RandomAccessFile(streamState == StreamState.DONE ? output : partial, "r");
+        }
+    }
+
+    /**
+     * Wait until the byte at {@code position} is written to the file.
+     *
+     * @return the amount of bytes that can be read from {@code position} without waiting,
+     * {@link Long#MAX_VALUE} once the download is complete, or {@code -1} when the position is
+     * past the end of the file.
+     * @throws IOException when the download failed or was cancelled.
+     */
+    @WorkerThread
+    long awaitAvailable(long position) throws IOException {
+        synchronized (streamLock) {
+            while (true) {
+                if (streamState == StreamState.FAILED) {
+                    throw new IOException("Download failed");
+                }
+
+                if (streamState == StreamState.DONE) {
+                    return Long.MAX_VALUE;
+                }
+
+                if (streamLength >= 0 && position >= streamLength) {
+                    return -1;
+                }
+
+                if (streamRangeStarts != null) {
+                    for (int i = 0; i < streamRangeStarts.length; i++) {
+                        if (position >= streamRangeStarts[i] && position < streamRangeLimits[i]) {
+                            if (streamRangeWritten[i] > position) {
+                                return streamRangeWritten[i] - position;
+                            }
+                            break;
+                        }
+                    }
+                }
+
+                waitForStream();
+            }
+        }
+    }
+
+    private void waitForStream() throws IOException {
+        try {
+            streamLock.wait();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Describe the ranges that are about to be written, each range is written from its start
+     * without gaps.
+     */
+    @WorkerThread
+    private void streamBegin(long length, long[] starts, long[] limits, long[] written) {
+        synchronized (streamLock) {
+            streamLength = length > 0 ? length : -1;
+            streamRangeStarts = starts;
+            streamRangeLimits = limits;
+            streamRangeWritten = written;
+            streamLock.notifyAll();
+        }
+    }
+
+    @WorkerThread
+    private void streamWritten(int range, long position) {
+        synchronized (streamLock) {
+            streamRangeWritten[range] = position;
+            streamLock.notifyAll();
+        }
+    }
+
+    // Must hold streamLock.
+    private void streamEnd(StreamState state) {
+        streamState = state;
+        streamLock.notifyAll();
+    }
+
+    /**
+     * If the failed request was, or could have been, made over HTTP/2. A timeout while
+     * connecting happens before the protocol is known.
+     */
+    @WorkerThread
+    private boolean isHttp2Attempt() {
+        return protocol == null ?
+                httpClient.protocols().contains(Protocol.HTTP_2) : protocol == Protocol.HTTP_2;
+    }
+
     @WorkerThread
     private void checkCancel() throws IOException {
         if (cancel.get()) {
@@ -291,15 +764,81 @@ public class FileCacheDownloader implements Runnable {
         }
     }
 
+    private static boolean contentRangeStartsAt(Response response, long offset) {
+        // Content-Range: bytes <start>-<end>/<length>
+        String contentRange = response.header("Content-Range");
+        return contentRange != null && contentRange.startsWith("bytes " + offset + "-");
+    }
+
+    /**
+     * The ETag or Last-Modified of the partial file, to send as If-Range.
+     */
     @WorkerThread
+    private String readPartialMeta() {
+        if (!partialMeta.exists()) {
+            return null;
+        }
+
+        try {
+            BufferedSource source = Okio.buffer(Okio.source(partialMeta));
+            try {
+                String validator = source.readUtf8Line();
+                return validator == null || validator.isEmpty() ? null : validator;
+            } finally {
+                Util.closeQuietly(source);
+            }
+        } catch (IOException e) {
+            log("could not read partial meta", e);
+            return null;
+        }
+    }
+
+    private static String validatorFor(Response response) {
+        // A weak ETag can't be used with If-Range.
+        String validator = response.header("ETag");
+        if (validator == null || validator.startsWith("W/")) {
+            validator = response.header("Last-Modified");
+        }
+        return validator;
+    }
+
+    @WorkerThread
+    private void writePartialMeta(String validator) {
+        if (validator == null) {
+            deletePartialMeta();
+            return;
+        }
+
+        try {
+            BufferedSink sink = Okio.buffer(Okio.sink(partialMeta));
+            try {
+                sink.writeUtf8(validator).writeUtf8("\n");
+            } finally {
+                Util.closeQuietly(sink);
+            }
+        } catch (IOException e) {
+            log("could not write partial meta", e);
+        }
+    }
+
+    @AnyThread
+    private void deletePartialMeta() {
+        if (partialMeta.exists() && !partialMeta.delete()) {
+            log("could not delete the partial meta file");
+        }
+    }
+
+    @AnyThread
     private void purgeOutput() {
-        if (output.exists()) {
-            final boolean deleteResult = output.delete();
+        if (partial.exists()) {
+            final boolean deleteResult = partial.delete();
 
             if (!deleteResult) {
                 log("could not delete the file in purgeOutput");
             }
         }
+
+        deletePartialMeta();
     }
 
     @WorkerThread
@@ -311,6 +850,12 @@ public class FileCacheDownloader implements Runnable {
         });
     }
 
+    private enum StreamState {
+        PENDING,
+        DONE,
+        FAILED
+    }
+
     private static class CancelException extends IOException {
         public CancelException() {
         }
@@ -328,5 +873,18 @@ public class FileCacheDownloader implements Runnable {
         void downloaderFinished(FileCacheDownloader fileCacheDownloader);
 
         void downloaderAddedFile(File file);
+
+        void downloaderKeptPartialFile(File partial);
+
+        /**
+         * A download completed with the given protocol, {@code bytes} is the amount that was
+         * transferred, not including a resumed part.
+         */
+        void downloaderMeasured(Protocol protocol, long bytes, long millis);
+
+        /**
+         * A HTTP/2 download failed with a stream reset or timeout.
+         */
+        void downloaderProtocolFailed(IOException e);
     }
 }
@@ -0,0 +1,88 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts the downloads running to each host, to limit them. Used with HTTP/2, where all
+ * downloads to a host are streams on the same connection.
+ * <p>
+ * Does not block, the {@link DownloadScheduler} only starts a download when
+ * {@link #tryAcquire(String)} succeeds. Not thread safe, the scheduler guards it with its lock.
+ */
+class HostStreamLimiter {
+    private int maxStreamsPerHost;
+    private final Map<String, Integer> hosts = new HashMap<>();
+
+    HostStreamLimiter(int maxStreamsPerHost) {
+        this.maxStreamsPerHost = maxStreamsPerHost;
+    }
+
+    /**
+     * Change the limit. Running downloads are not affected, new ones only start when their host
+     * is below the new limit.
+     */
+    void setMaxStreamsPerHost(int maxStreamsPerHost) {
+        this.maxStreamsPerHost = maxStreamsPerHost;
+    }
+
+    /**
+     * Take a stream for the host if it is below the limit. A {@code null} host is not limited.
+     */
+    boolean tryAcquire(String host) {
+        if (host == null) {
+            return true;
+        }
+
+        int streams = streams(host);
+        if (streams >= maxStreamsPerHost) {
+            return false;
+        }
+        hosts.put(host, streams + 1);
+        return true;
+    }
+
+    /**
+     * Take a stream for the host even when it is at the limit.
+     */
+    void acquire(String host) {
+        if (host != null) {
+            hosts.put(host, streams(host) + 1);
+        }
+    }
+
+    void release(String host) {
+        if (host == null) {
+            return;
+        }
+
+        int streams = streams(host) - 1;
+        if (streams <= 0) {
+            hosts.remove(host);
+        } else {
+            hosts.put(host, streams);
+        }
+    }
+
+    private int streams(String host) {
+        Integer streams = hosts.get(host);
+        return streams == null ? 0 : streams;
+    }
+}
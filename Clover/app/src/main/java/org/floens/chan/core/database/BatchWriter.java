@@ -0,0 +1,145 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.j256.ormlite.dao.BaseDaoImpl;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.table.TableInfo;
+
+import org.floens.chan.utils.Time;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes many rows of one table with a single compiled INSERT or UPDATE statement of all
+ * columns. {@link Dao#create(Object)} and {@link Dao#update(Object)} compile a statement for
+ * every row.
+ * <p>Must be used inside a write task of the {@link DatabaseManager}, the rows are written in
+ * the transaction of that task. Logs the time of the batch on {@link #close()}.
+ */
+class BatchWriter<T> implements AutoCloseable {
+    private final String name;
+    private final boolean insert;
+    private final FieldType idField;
+    private final List<FieldType> columns = new ArrayList<>();
+    private final SQLiteStatement statement;
+
+    private final long start;
+    private int rows = 0;
+
+    /**
+     * Batch of inserts, the generated id is assigned to the written objects.
+     */
+    static <T> BatchWriter<T> insert(DatabaseHelper helper, Dao<T, ?> dao, String name) {
+        return new BatchWriter<>(helper, dao, name, true);
+    }
+
+    /**
+     * Batch of updates of all columns, by id.
+     */
+    static <T> BatchWriter<T> update(DatabaseHelper helper, Dao<T, ?> dao, String name) {
+        return new BatchWriter<>(helper, dao, name, false);
+    }
+
+    private BatchWriter(DatabaseHelper helper, Dao<T, ?> dao, String name, boolean insert) {
+        this.name = name;
+        this.insert = insert;
+        start = Time.startTiming();
+
+        TableInfo<T, ?> tableInfo = ((BaseDaoImpl<T, ?>) dao).getTableInfo();
+        idField = tableInfo.getIdField();
+        for (FieldType fieldType : tableInfo.getFieldTypes()) {
+            if (fieldType != idField && !fieldType.isForeignCollection()) {
+                columns.add(fieldType);
+            }
+        }
+
+        StringBuilder sql = new StringBuilder();
+        if (insert) {
+            sql.append("INSERT INTO `").append(tableInfo.getTableName()).append("` (");
+            for (int i = 0; i < columns.size(); i++) {
+                sql.append(i > 0 ? ", `" : "`").append(columns.get(i).getColumnName()).append('`');
+            }
+            sql.append(") VALUES (");
+            for (int i = 0; i < columns.size(); i++) {
+                sql.append(i > 0 ? ", ?" : "?");
+            }
+            sql.append(')');
+        } else {
+            sql.append("UPDATE `").append(tableInfo.getTableName()).append("` SET ");
+            for (int i = 0; i < columns.size(); i++) {
+                sql.append(i > 0 ? ", `" : "`").append(columns.get(i).getColumnName()).append("` = ?");
+            }
+            sql.append(" WHERE `").append(idField.getColumnName()).append("` = ?");
+        }
+
+        // The same database object as the connection source, the task's transaction applies.
+        SQLiteDatabase database = helper.getWritableDatabase();
+        statement = database.compileStatement(sql.toString());
+    }
+
+    void write(T data) throws SQLException {
+        statement.clearBindings();
+        int index = 1;
+        for (FieldType column : columns) {
+            bind(index++, column.extractJavaFieldToSqlArgValue(data));
+        }
+
+        if (insert) {
+            long id = statement.executeInsert();
+            if (id < 0) {
+                throw new SQLException("Could not insert into " + name);
+            }
+            idField.assignField(data, idField.getDataPersister().convertIdNumber(id), false, null);
+        } else {
+            bind(index, idField.extractJavaFieldToSqlArgValue(data));
+            statement.executeUpdateDelete();
+        }
+        rows++;
+    }
+
+    @Override
+    public void close() {
+        statement.close();
+        if (rows > 0) {
+            Time.endTiming("Batch " + name + " of " + rows + " rows", start);
+        }
+    }
+
+    private void bind(int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof Float || value instanceof Double) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+}
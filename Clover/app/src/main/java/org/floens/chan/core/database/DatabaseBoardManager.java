@@ -60,8 +60,10 @@ public class DatabaseBoardManager {
 
     public Callable<Void> updateIncludingUserFields(final List<Board> boards) {
         return () -> {
-            for (Board board : boards) {
-                helper.boardsDao.update(board);
+            try (BatchWriter<Board> updates = BatchWriter.update(helper, helper.boardsDao, "update boards")) {
+                for (Board board : boards) {
+                    updates.write(board);
+                }
             }
 
             return null;
@@ -115,18 +117,22 @@ public class DatabaseBoardManager {
             }
 
             if (!toCreate.isEmpty()) {
-                for (Board board : toCreate) {
-                    helper.boardsDao.create(board);
+                try (BatchWriter<Board> inserts = BatchWriter.insert(helper, helper.boardsDao, "create boards")) {
+                    for (Board board : toCreate) {
+                        inserts.write(board);
+                    }
                 }
             }
 
             if (!toUpdate.isEmpty()) {
-                for (Pair<Board, Board> pair : toUpdate) {
-                    Board dbBoard = pair.first;
-                    Board newPropertiesBoard = pair.second;
+                try (BatchWriter<Board> updates = BatchWriter.update(helper, helper.boardsDao, "update boards")) {
+                    for (Pair<Board, Board> pair : toUpdate) {
+                        Board dbBoard = pair.first;
+                        Board newPropertiesBoard = pair.second;
 
-                    dbBoard.updateExcludingUserFields(newPropertiesBoard);
-                    helper.boardsDao.update(dbBoard);
+                        dbBoard.updateExcludingUserFields(newPropertiesBoard);
+                        updates.write(dbBoard);
+                    }
                 }
             }
 
@@ -152,7 +158,7 @@ public class DatabaseBoardManager {
     }
 
     public Callable<Board> getBoard(final Site site, final String code) {
-        return () -> {
+        return DatabaseManager.read(() -> {
             Board board = helper.boardsDao.queryBuilder()
                     .where().eq("site", site.id())
                     .and().eq("value", code)
@@ -163,12 +169,12 @@ public class DatabaseBoardManager {
             }
 
             return board;
-        };
+        });
     }
 
     @SuppressLint("UseSparseArrays")
     public Callable<List<Pair<Site, List<Board>>>> getBoardsForAllSitesOrdered(List<Site> sites) {
-        return () -> {
+        return DatabaseManager.read(() -> {
             long start = Time.startTiming();
 
             // Query the orders of the sites.
@@ -230,11 +236,11 @@ public class DatabaseBoardManager {
             start = Time.startTiming();
 
             return res;
-        };
+        });
     }
 
     public Callable<List<Board>> getSiteBoards(final Site site) {
-        return () -> {
+        return DatabaseManager.read(() -> {
             List<Board> boards = helper.boardsDao.queryBuilder()
                     .where().eq("site", site.id())
                     .query();
@@ -243,11 +249,11 @@ public class DatabaseBoardManager {
                 board.site = site;
             }
             return boards;
-        };
+        });
     }
 
     public Callable<List<Board>> getSiteSavedBoards(final Site site) {
-        return () -> {
+        return DatabaseManager.read(() -> {
             List<Board> boards = helper.boardsDao.queryBuilder()
                     .where().eq("site", site.id())
                     .and().eq("saved", true)
@@ -257,7 +263,7 @@ public class DatabaseBoardManager {
                 board.site = site;
             }
             return boards;
-        };
+        });
     }
 
     public Callable<Void> deleteBoards(Site site) {
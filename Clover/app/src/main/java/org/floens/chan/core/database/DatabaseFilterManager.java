@@ -68,16 +68,16 @@ public class DatabaseFilterManager {
     }
 
     public Callable<List<Filter>> getFilters() {
-        return new Callable<List<Filter>>() {
+        return DatabaseManager.read(new Callable<List<Filter>>() {
             @Override
             public List<Filter> call() throws Exception {
                 return helper.filterDao.queryForAll();
             }
-        };
+        });
     }
 
     public Callable<Long> getCount() {
-        return () -> helper.filterDao.countOf();
+        return DatabaseManager.read(() -> helper.filterDao.countOf());
     }
 
     public Callable<Void> deleteFilters(List<Filter> filtersToDelete) {
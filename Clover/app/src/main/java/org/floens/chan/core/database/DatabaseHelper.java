@@ -49,7 +49,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     private static final String TAG = "DatabaseHelper";
 
     private static final String DATABASE_NAME = "ChanDB";
-    private static final int DATABASE_VERSION = 27;
+    private static final int DATABASE_VERSION = 28;
 
     public Dao<Pin, Integer> pinDao;
     public Dao<Loadable, Integer> loadableDao;
@@ -64,6 +64,8 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
 
     public DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Lets the reader threads of the DatabaseManager query while a write is running.
+        setWriteAheadLoggingEnabled(true);
 
         this.context = context;
 
@@ -92,6 +94,8 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             TableUtils.createTable(connectionSource, History.class);
             TableUtils.createTable(connectionSource, Filter.class);
             TableUtils.createTable(connectionSource, SiteModel.class);
+
+            createLoadableIndex();
         } catch (SQLException e) {
             Logger.e(TAG, "Error creating db", e);
             throw new RuntimeException(e);
@@ -283,6 +287,21 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                 Logger.e(TAG, "Error upgrading to version 27", e);
             }
         }
+
+        if (oldVersion < 28) {
+            try {
+                createLoadableIndex();
+            } catch (SQLException e) {
+                Logger.e(TAG, "Error upgrading to version 28", e);
+            }
+        }
+    }
+
+    /**
+     * Index for the lookup of thread loadables by their site, mode, board and no.
+     */
+    private void createLoadableIndex() throws SQLException {
+        loadableDao.executeRawNoArgs("CREATE INDEX IF NOT EXISTS loadable_site_mode_board_no_idx ON loadable(site, mode, board, no);");
     }
 
     public void reset() {
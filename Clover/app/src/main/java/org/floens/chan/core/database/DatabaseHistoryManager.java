@@ -58,7 +58,7 @@ public class DatabaseHistoryManager {
     }
 
     public Callable<List<History>> getHistory() {
-        return new Callable<List<History>>() {
+        return DatabaseManager.read(new Callable<List<History>>() {
             @Override
             public List<History> call() throws Exception {
                 QueryBuilder<History, Integer> historyQuery = helper.historyDao.queryBuilder();
@@ -69,7 +69,7 @@ public class DatabaseHistoryManager {
                 }
                 return date;
             }
-        };
+        });
     }
 
     public Callable<History> addHistory(final History history) {
@@ -19,6 +19,10 @@ package org.floens.chan.core.database;
 
 import android.util.Log;
 
+import androidx.annotation.AnyThread;
+import androidx.annotation.MainThread;
+
+import com.j256.ormlite.dao.GenericRawResults;
 import com.j256.ormlite.stmt.DeleteBuilder;
 import com.j256.ormlite.stmt.QueryBuilder;
 
@@ -30,20 +34,27 @@ import org.floens.chan.utils.Time;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DatabaseLoadableManager {
     private static final String TAG = "DatabaseLoadableManager";
 
+    // Trim the cache on flush when it holds more loadables than this.
+    private static final int MAX_CACHED_LOADABLES = 250;
+
     private DatabaseManager databaseManager;
     private DatabaseHelper helper;
 
-    private Map<Loadable, Loadable> cachedLoadables = new HashMap<>();
+    // Written on the database threads, read from the main thread by get() to skip the database.
+    // Lookups that may add an entry lock on the map, refreshForeign() also runs on the readers.
+    private final LoadableIdentityMap cachedLoadables = new LoadableIdentityMap();
+    // Ids of the loadables that have a thread loader, set from the ChanLoaderFactory.
+    private final Set<Integer> inUse = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
     public DatabaseLoadableManager(DatabaseManager databaseManager, DatabaseHelper helper) {
         this.databaseManager = databaseManager;
@@ -53,6 +64,8 @@ public class DatabaseLoadableManager {
     /**
      * Called when the application goes into the background, to do intensive update calls for loadables
      * whose list indexes or titles have changed.
+     * <p>Also trims the cache when it grew too large, loadables without a pin, history or thread
+     * loader are then evicted.
      */
     public Callable<Void> flush() {
         return new Callable<Void>() {
@@ -68,19 +81,33 @@ public class DatabaseLoadableManager {
 
                 if (!toFlush.isEmpty()) {
                     Logger.d(TAG, "Flushing " + toFlush.size() + " loadable(s)");
-                    long start = Time.startTiming();
-                    for (int i = 0; i < toFlush.size(); i++) {
-                        Loadable loadable = toFlush.get(i);
-                        helper.loadableDao.update(loadable);
+                    try (BatchWriter<Loadable> updates = BatchWriter.update(helper, helper.loadableDao, "loadable flush")) {
+                        for (int i = 0; i < toFlush.size(); i++) {
+                            Loadable loadable = toFlush.get(i);
+                            updates.write(loadable);
+                        }
                     }
-                    Time.endTiming("Loadable flushing", start);
                 }
 
+                trimCache();
+
                 return null;
             }
         };
     }
 
+    /**
+     * Mark the loadable as used by a thread loader, it is then not evicted from the cache.
+     */
+    @AnyThread
+    public void setInUse(Loadable loadable, boolean used) {
+        if (used) {
+            inUse.add(loadable.id);
+        } else {
+            inUse.remove(loadable.id);
+        }
+    }
+
     /**
      * All loadables that are not gotten from a database (like from any of the Loadable.for...() factory methods)
      * need to go through this method to correctly get a loadable if it already existed in the db.
@@ -97,6 +124,11 @@ public class DatabaseLoadableManager {
 
         // We only cache THREAD loadables in the db
         if (loadable.isThreadMode()) {
+            Loadable cached = cachedLoadables.get(loadable);
+            if (cached != null) {
+                return cached;
+            }
+
             long start = Time.startTiming();
             Loadable result = databaseManager.runTask(getLoadable(loadable));
             Time.endTiming("get loadable from db " + loadable.boardCode, start);
@@ -106,6 +138,30 @@ public class DatabaseLoadableManager {
         }
     }
 
+    /**
+     * Same as {@link #get(Loadable)}, without waiting for the database on the main thread. The
+     * result is given on the main thread, right away when the loadable is cached or not a
+     * thread loadable.
+     */
+    @MainThread
+    public void getAsync(final Loadable loadable, DatabaseManager.TaskResult<Loadable> result) {
+        if (loadable.id != 0) {
+            throw new IllegalArgumentException("get() only works for transient loadables");
+        }
+
+        if (!loadable.isThreadMode()) {
+            result.onComplete(loadable);
+            return;
+        }
+
+        Loadable cached = cachedLoadables.get(loadable);
+        if (cached != null) {
+            result.onComplete(cached);
+        } else {
+            databaseManager.runTaskAsync(getLoadable(loadable), result);
+        }
+    }
+
     /**
      * Call this when you use a thread loadable as a foreign object on your table
      * <p>It will correctly update the loadable cache
@@ -120,18 +176,24 @@ public class DatabaseLoadableManager {
         }
 
         // If the loadable was already loaded in the cache, return that entry
-        for (Loadable key : cachedLoadables.keySet()) {
-            if (key.id == loadable.id) {
-                return key;
-            }
+        Loadable cached = cachedLoadables.getById(loadable.id);
+        if (cached != null) {
+            return cached;
         }
 
-        // Add it to the cache, refresh contents
-        helper.loadableDao.refresh(loadable);
-        loadable.site = SiteRepository.forId(loadable.siteId);
-        loadable.board = loadable.site.board(loadable.boardCode);
-        cachedLoadables.put(loadable, loadable);
-        return loadable;
+        synchronized (cachedLoadables) {
+            cached = cachedLoadables.getById(loadable.id);
+            if (cached != null) {
+                return cached;
+            }
+
+            // Add it to the cache, refresh contents
+            helper.loadableDao.refresh(loadable);
+            loadable.site = SiteRepository.forId(loadable.siteId);
+            loadable.board = loadable.site.board(loadable.boardCode);
+            cachedLoadables.put(loadable);
+            return loadable;
+        }
     }
 
     private Callable<Loadable> getLoadable(final Loadable loadable) {
@@ -142,47 +204,73 @@ public class DatabaseLoadableManager {
         return new Callable<Loadable>() {
             @Override
             public Loadable call() throws Exception {
-                Loadable cachedLoadable = cachedLoadables.get(loadable);
-                if (cachedLoadable != null) {
-                    Logger.v(TAG, "Cached loadable found");
-                    return cachedLoadable;
-                } else {
-                    QueryBuilder<Loadable, Integer> builder = helper.loadableDao.queryBuilder();
-                    List<Loadable> results = builder.where()
-                            .eq("site", loadable.siteId).and()
-                            .eq("mode", loadable.mode)
-                            .and().eq("board", loadable.boardCode)
-                            .and().eq("no", loadable.no)
-                            .query();
-
-                    if (results.size() > 1) {
-                        Log.w(TAG, "Multiple loadables found for where Loadable.equals() would return true");
-                        for (Loadable result : results) {
-                            Log.w(TAG, result.toString());
+                synchronized (cachedLoadables) {
+                    Loadable cachedLoadable = cachedLoadables.get(loadable);
+                    if (cachedLoadable != null) {
+                        Logger.v(TAG, "Cached loadable found");
+                        return cachedLoadable;
+                    } else {
+                        QueryBuilder<Loadable, Integer> builder = helper.loadableDao.queryBuilder();
+                        List<Loadable> results = builder.where()
+                                .eq("site", loadable.siteId).and()
+                                .eq("mode", loadable.mode)
+                                .and().eq("board", loadable.boardCode)
+                                .and().eq("no", loadable.no)
+                                .query();
+
+                        if (results.size() > 1) {
+                            Log.w(TAG, "Multiple loadables found for where Loadable.equals() would return true");
+                            for (Loadable result : results) {
+                                Log.w(TAG, result.toString());
+                            }
                         }
-                    }
 
-                    Loadable result = results.isEmpty() ? null : results.get(0);
-                    if (result == null) {
-                        Log.d(TAG, "Creating loadable");
-                        helper.loadableDao.create(loadable);
-                        result = loadable;
-                    } else {
-                        Log.d(TAG, "Loadable found in db");
-                        result.site = SiteRepository.forId(result.siteId);
-                        result.board = result.site.board(result.boardCode);
-                    }
+                        Loadable result = results.isEmpty() ? null : results.get(0);
+                        if (result == null) {
+                            Log.d(TAG, "Creating loadable");
+                            helper.loadableDao.create(loadable);
+                            result = loadable;
+                        } else {
+                            Log.d(TAG, "Loadable found in db");
+                            result.site = SiteRepository.forId(result.siteId);
+                            result.board = result.site.board(result.boardCode);
+                        }
 
-                    cachedLoadables.put(result, result);
-                    return result;
+                        cachedLoadables.put(result);
+                        return result;
+                    }
                 }
             }
         };
     }
 
+    private void trimCache() throws SQLException {
+        if (cachedLoadables.size() <= MAX_CACHED_LOADABLES) {
+            return;
+        }
+
+        long start = Time.startTiming();
+        Set<Integer> retained = new HashSet<>(inUse);
+        addLoadableIds(helper.pinDao.queryRaw("SELECT loadable_id FROM pin"), retained);
+        addLoadableIds(helper.historyDao.queryRaw("SELECT loadable_id FROM history"), retained);
+
+        int evicted;
+        synchronized (cachedLoadables) {
+            // Loaders obtained while querying the pins and history.
+            retained.addAll(inUse);
+            evicted = cachedLoadables.evict(retained);
+        }
+        Time.endTiming("Evicted " + evicted + " loadable(s), " + cachedLoadables.size() + " cached", start);
+    }
+
+    private void addLoadableIds(GenericRawResults<String[]> results, Set<Integer> ids) throws SQLException {
+        for (String[] row : results.getResults()) {
+            ids.add(Integer.parseInt(row[0]));
+        }
+    }
 
     public Callable<List<Loadable>> getLoadables(Site site) {
-        return () -> helper.loadableDao.queryForEq("site", site.id());
+        return DatabaseManager.read(() -> helper.loadableDao.queryForEq("site", site.id()));
     }
 
     public Callable<Object> deleteLoadables(List<Loadable> siteLoadables) {
@@ -197,6 +285,13 @@ public class DatabaseLoadableManager {
             builder.where().in("id", loadableIdSet);
 
             int deletedCount = builder.delete();
+
+            synchronized (cachedLoadables) {
+                for (Loadable loadable : siteLoadables) {
+                    cachedLoadables.remove(loadable);
+                }
+            }
+
             if (loadableIdSet.size() != deletedCount) {
                 throw new IllegalStateException("Deleted count not equals to loadableIdSet.size(). (deletedCount = "
                         + deletedCount + "), " + "(loadableIdSet = " + loadableIdSet.size() + ")");
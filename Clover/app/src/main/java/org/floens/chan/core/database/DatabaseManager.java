@@ -27,6 +27,7 @@ import androidx.annotation.NonNull;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.misc.TransactionManager;
 
+import org.floens.chan.BuildConfig;
 import org.floens.chan.Chan;
 import org.floens.chan.utils.Logger;
 import org.floens.chan.utils.Time;
@@ -48,18 +49,32 @@ import de.greenrobot.event.EventBus;
 
 /**
  * The central point for database related access.<br>
- * <b>All database queries are run on a single database thread</b>, therefor all functions return a
+ * <b>All database queries are run on database threads</b>, therefor all functions return a
  * {@link Callable} that needs to be queued on either {@link #runTaskAsync(Callable)},
  * {@link #runTaskAsync(Callable, TaskResult)} or {@link #runTask(Callable)}.<br>
- * You often want the sync flavour for queries that return data, it waits for the task to be finished on the other thread.<br>
- * Use the async versions when you don't care when the query is done.
+ * Writes run in a transaction on a single writer thread. Queries that only read are declared
+ * with {@link #read(Callable)}, they run without a transaction on a small reader pool, the
+ * database is in WAL mode so they do not wait for a running write. A read still waits for the
+ * writes that were queued before it, so a read always sees the writes queued earlier.<br>
+ * Prefer the async versions, with a {@link TaskResult} when the result is needed, they never
+ * block the calling thread. {@link #submitTask(Callable)} returns a {@link Future} for background
+ * threads that want to wait at a later point.<br>
+ * The sync flavour waits for the task to be finished on the other thread, on the main thread that
+ * stalls the ui when the database thread is busy. Those waits are recorded in developer builds,
+ * see {@link #getSummary()}.
  */
 @Singleton
 public class DatabaseManager {
     private static final String TAG = "DatabaseManager";
 
-    private final ExecutorService backgroundExecutor;
-    private Thread executorThread;
+    private static final int READER_THREADS = 2;
+
+    private final ExecutorService writeExecutor;
+    private final ExecutorService readExecutor;
+    private volatile Thread writerThread;
+    private final ThreadLocal<Boolean> readerThread = new ThreadLocal<>();
+    private final Object writeLock = new Object();
+    private Future<?> lastWrite;
     private final DatabaseHelper helper;
 
     private final DatabasePinManager databasePinManager;
@@ -71,12 +86,22 @@ public class DatabaseManager {
     private final DatabaseSiteManager databaseSiteManager;
     private final DatabaseHideManager databaseHideManager;
 
+    private final MainThreadWaits mainThreadWaits = new MainThreadWaits();
+
     @Inject
     public DatabaseManager(Context context) {
-        backgroundExecutor = new ThreadPoolExecutor(
+        writeExecutor = new ThreadPoolExecutor(
                 1, 1,
                 1000L, TimeUnit.DAYS,
                 new LinkedBlockingQueue<>());
+        readExecutor = new ThreadPoolExecutor(
+                READER_THREADS, READER_THREADS,
+                1000L, TimeUnit.DAYS,
+                new LinkedBlockingQueue<>(),
+                runnable -> new Thread(() -> {
+                    readerThread.set(Boolean.TRUE);
+                    runnable.run();
+                }, "Database reader"));
 
         helper = new DatabaseHelper(context);
 
@@ -172,6 +197,10 @@ public class DatabaseManager {
             e.printStackTrace();
         }
 
+        if (BuildConfig.DEVELOPER_MODE) {
+            o += mainThreadWaits.getSummary();
+        }
+
         return o;
     }
 
@@ -196,6 +225,14 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Declare the task as read-only. It is then run on the reader pool without a transaction.
+     * The task must not write to the database.
+     */
+    public static <T> Callable<T> read(Callable<T> taskCallable) {
+        return new ReadTask<>(taskCallable);
+    }
+
     public <T> void runTaskAsync(final Callable<T> taskCallable) {
         runTaskAsync(taskCallable, result -> {
         });
@@ -205,17 +242,40 @@ public class DatabaseManager {
         executeTask(taskCallable, taskResult);
     }
 
+    /**
+     * Queue the task, the future can be waited on from a background thread.
+     */
+    public <T> Future<T> submitTask(final Callable<T> taskCallable) {
+        return executeTask(taskCallable, null);
+    }
+
+    /**
+     * Run the task and wait for the result. Avoid on the main thread, use
+     * {@link #runTaskAsync(Callable, TaskResult)} instead.
+     */
     public <T> T runTask(final Callable<T> taskCallable) {
+        boolean recordWait = BuildConfig.DEVELOPER_MODE
+                && Looper.myLooper() == Looper.getMainLooper();
+        long start = recordWait ? Time.startTiming() : 0L;
         try {
             return executeTask(taskCallable, null).get();
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException(e);
+        } finally {
+            if (recordWait) {
+                mainThreadWaits.record(System.nanoTime() - start);
+            }
         }
     }
 
     private <T> Future<T> executeTask(final Callable<T> taskCallable, final TaskResult<T> taskResult) {
-        if (Thread.currentThread() == executorThread) {
-            DatabaseCallable<T> databaseCallable = new DatabaseCallable<>(taskCallable, taskResult);
+        boolean isRead = taskCallable instanceof ReadTask;
+        Thread current = Thread.currentThread();
+
+        if (current == writerThread || (isRead && readerThread.get() != null)) {
+            // Nested task, run it inline. A read on the writer thread joins the transaction.
+            DatabaseCallable<T> databaseCallable =
+                    new DatabaseCallable<>(taskCallable, taskResult, isRead, null);
             T result = databaseCallable.call();
 
             return new Future<T>() {
@@ -245,25 +305,47 @@ public class DatabaseManager {
                 }
             };
         } else {
-            return backgroundExecutor.submit(new DatabaseCallable<>(taskCallable, taskResult));
+            synchronized (writeLock) {
+                if (isRead) {
+                    Future<?> after = lastWrite != null && !lastWrite.isDone() ? lastWrite : null;
+                    return readExecutor.submit(
+                            new DatabaseCallable<>(taskCallable, taskResult, true, after));
+                } else {
+                    Future<T> future = writeExecutor.submit(
+                            new DatabaseCallable<>(taskCallable, taskResult, false, null));
+                    lastWrite = future;
+                    return future;
+                }
+            }
         }
     }
 
     private class DatabaseCallable<T> implements Callable<T> {
         private final Callable<T> taskCallable;
         private final TaskResult<T> taskResult;
+        private final boolean isRead;
+        private final Future<?> after;
 
-        public DatabaseCallable(Callable<T> taskCallable, TaskResult<T> taskResult) {
+        public DatabaseCallable(Callable<T> taskCallable, TaskResult<T> taskResult,
+                                boolean isRead, Future<?> after) {
             this.taskCallable = taskCallable;
             this.taskResult = taskResult;
+            this.isRead = isRead;
+            this.after = after;
         }
 
         @Override
         public T call() {
-            executorThread = Thread.currentThread();
-
             try {
-                final T result = TransactionManager.callInTransaction(helper.getConnectionSource(), taskCallable);
+                final T result;
+                if (isRead) {
+                    awaitEarlierWrites();
+                    result = taskCallable.call();
+                } else {
+                    writerThread = Thread.currentThread();
+                    result = TransactionManager.callInTransaction(helper.getConnectionSource(), taskCallable);
+                }
+
                 if (taskResult != null) {
                     new Handler(Looper.getMainLooper()).post(() -> taskResult.onComplete(result));
                 }
@@ -273,6 +355,31 @@ public class DatabaseManager {
                 throw new RuntimeException(e);
             }
         }
+
+        private void awaitEarlierWrites() throws InterruptedException {
+            if (after == null) {
+                return;
+            }
+
+            try {
+                after.get();
+            } catch (ExecutionException ignored) {
+                // Already logged by the write, the read can still go ahead.
+            }
+        }
+    }
+
+    private static class ReadTask<T> implements Callable<T> {
+        private final Callable<T> taskCallable;
+
+        private ReadTask(Callable<T> taskCallable) {
+            this.taskCallable = taskCallable;
+        }
+
+        @Override
+        public T call() throws Exception {
+            return taskCallable.call();
+        }
     }
 
     public interface TaskResult<T> {
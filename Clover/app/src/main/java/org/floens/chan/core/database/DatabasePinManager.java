@@ -79,9 +79,11 @@ public class DatabasePinManager {
         return new Callable<List<Pin>>() {
             @Override
             public List<Pin> call() throws Exception {
-                for (int i = 0; i < pins.size(); i++) {
-                    Pin pin = pins.get(i);
-                    helper.pinDao.update(pin);
+                try (BatchWriter<Pin> updates = BatchWriter.update(helper, helper.pinDao, "update pins")) {
+                    for (int i = 0; i < pins.size(); i++) {
+                        Pin pin = pins.get(i);
+                        updates.write(pin);
+                    }
                 }
 
                 return null;
@@ -90,7 +92,7 @@ public class DatabasePinManager {
     }
 
     public Callable<List<Pin>> getPins() {
-        return new Callable<List<Pin>>() {
+        return DatabaseManager.read(new Callable<List<Pin>>() {
             @Override
             public List<Pin> call() throws Exception {
                 List<Pin> list = helper.pinDao.queryForAll();
@@ -100,7 +102,7 @@ public class DatabasePinManager {
                 }
                 return list;
             }
-        };
+        });
     }
 
     public Callable<Void> deletePins(List<Loadable> siteLoadables) {
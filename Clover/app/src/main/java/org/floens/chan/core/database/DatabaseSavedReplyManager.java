@@ -155,14 +155,14 @@ public class DatabaseSavedReplyManager {
     }
 
     public Callable<SavedReply> findSavedReply(final Board board, final int no) {
-        return () -> {
+        return DatabaseManager.read(() -> {
             QueryBuilder<SavedReply, Integer> builder = helper.savedDao.queryBuilder();
             List<SavedReply> query = builder.where()
                     .eq("site", board.site.id())
                     .and().eq("board", board.code)
                     .and().eq("no", no).query();
             return query.isEmpty() ? null : query.get(0);
-        };
+        });
     }
 
     public Callable<Void> deleteSavedReplies(Site site) {
@@ -39,15 +39,15 @@ public class DatabaseSiteManager {
     }
 
     public Callable<SiteModel> byId(int id) {
-        return () -> helper.siteDao.queryForId(id);
+        return DatabaseManager.read(() -> helper.siteDao.queryForId(id));
     }
 
     public Callable<List<SiteModel>> getAll() {
-        return () -> helper.siteDao.queryForAll();
+        return DatabaseManager.read(() -> helper.siteDao.queryForAll());
     }
 
     public Callable<Long> getCount() {
-        return () -> helper.siteDao.countOf();
+        return DatabaseManager.read(() -> helper.siteDao.countOf());
     }
 
     public Callable<SiteModel> add(final SiteModel site) {
@@ -72,7 +72,7 @@ public class DatabaseSiteManager {
     }
 
     public Callable<Map<Integer, Integer>> getOrdering() {
-        return () -> {
+        return DatabaseManager.read(() -> {
             QueryBuilder<SiteModel, Integer> q = helper.siteDao.queryBuilder();
             q.selectColumns("id", "order");
             List<SiteModel> modelsWithOrder = q.query();
@@ -81,7 +81,7 @@ public class DatabaseSiteManager {
                 ordering.put(siteModel.id, siteModel.order);
             }
             return ordering;
-        };
+        });
     }
 
     public Callable<Void> updateOrdering(final List<Integer> siteIdsWithCorrectOrder) {
@@ -0,0 +1,84 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.database;
+
+import org.floens.chan.core.model.orm.Loadable;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The loadables of the {@link DatabaseLoadableManager}, one instance per database row.
+ * <p>Indexed by id for foreign references and by the (site, mode, board, no) of
+ * {@link Loadable#equals(Object)} for transient loadables. Reads can be made from any thread,
+ * changes are made while holding the lock on this map.
+ */
+class LoadableIdentityMap {
+    private final Map<Loadable, Loadable> byKey = new ConcurrentHashMap<>();
+    private final Map<Integer, Loadable> byId = new ConcurrentHashMap<>();
+
+    Loadable get(Loadable key) {
+        return byKey.get(key);
+    }
+
+    Loadable getById(int id) {
+        return byId.get(id);
+    }
+
+    void put(Loadable loadable) {
+        byKey.put(loadable, loadable);
+        byId.put(loadable.id, loadable);
+    }
+
+    void remove(Loadable loadable) {
+        Loadable removed = byId.remove(loadable.id);
+        if (removed != null) {
+            byKey.remove(removed);
+        }
+    }
+
+    Collection<Loadable> values() {
+        return byId.values();
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    /**
+     * Remove all loadables that are not dirty and whose id is not in {@code retained}.
+     *
+     * @return the count of removed loadables.
+     */
+    int evict(Set<Integer> retained) {
+        int evicted = 0;
+        Iterator<Loadable> iterator = byId.values().iterator();
+        while (iterator.hasNext()) {
+            Loadable loadable = iterator.next();
+            if (!loadable.dirty && !retained.contains(loadable.id)) {
+                iterator.remove();
+                byKey.remove(loadable);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.database;
+
+import org.floens.chan.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records every time the main thread waited on a database task, with the call site and how long
+ * it waited. Only used in developer builds, see {@link DatabaseManager#runTask}.
+ */
+class MainThreadWaits {
+    private static final String TAG = "MainThreadWaits";
+
+    // Waits longer than a frame are logged.
+    private static final long LOG_THRESHOLD_NS = 16_000_000L;
+    private static final int SUMMARY_SITES = 10;
+
+    private final Map<String, Site> sites = new HashMap<>();
+
+    void record(long waitNs) {
+        String callSite = findCallSite();
+
+        synchronized (sites) {
+            Site site = sites.get(callSite);
+            if (site == null) {
+                site = new Site(callSite);
+                sites.put(callSite, site);
+            }
+            site.count++;
+            site.totalNs += waitNs;
+            site.maxNs = Math.max(site.maxNs, waitNs);
+        }
+
+        if (waitNs >= LOG_THRESHOLD_NS) {
+            Logger.w(TAG, "Main thread waited " + (waitNs / 1_000_000L) + "ms on the database at "
+                    + callSite);
+        }
+    }
+
+    /**
+     * The call sites with the most total waiting time first.
+     */
+    String getSummary() {
+        List<Site> sorted;
+        synchronized (sites) {
+            sorted = new ArrayList<>(sites.size());
+            for (Site site : sites.values()) {
+                sorted.add(site.copy());
+            }
+        }
+
+        if (sorted.isEmpty()) {
+            return "No main thread waits\n";
+        }
+
+        Collections.sort(sorted, new Comparator<Site>() {
+            @Override
+            public int compare(Site a, Site b) {
+                return Long.compare(b.totalNs, a.totalNs);
+            }
+        });
+
+        StringBuilder o = new StringBuilder();
+        o.append("Main thread waits:\n");
+        for (int i = 0; i < Math.min(SUMMARY_SITES, sorted.size()); i++) {
+            Site site = sorted.get(i);
+            o.append(site.callSite).append(": ")
+                    .append(site.count).append("x, total ")
+                    .append(site.totalNs / 1_000_000L).append("ms, max ")
+                    .append(site.maxNs / 1_000_000L).append("ms\n");
+        }
+        return o.toString();
+    }
+
+    /**
+     * The first frame outside of the database package, the one that asked for the data.
+     */
+    private static String findCallSite() {
+        String name = MainThreadWaits.class.getName();
+        String databasePackage = name.substring(0, name.lastIndexOf('.') + 1);
+        for (StackTraceElement element : new Throwable().getStackTrace()) {
+            if (!element.getClassName().startsWith(databasePackage)) {
+                return element.getClassName() + "." + element.getMethodName()
+                        + ":" + element.getLineNumber();
+            }
+        }
+        return "unknown";
+    }
+
+    private static class Site {
+        private final String callSite;
+        private int count;
+        private long totalNs;
+        private long maxNs;
+
+        private Site(String callSite) {
+            this.callSite = callSite;
+        }
+
+        private Site copy() {
+            Site copy = new Site(callSite);
+            copy.count = count;
+            copy.totalNs = totalNs;
+            copy.maxNs = maxNs;
+            return copy;
+        }
+    }
+}
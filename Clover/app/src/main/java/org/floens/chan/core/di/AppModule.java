@@ -7,10 +7,15 @@ import com.android.volley.toolbox.ImageLoader;
 
 import org.codejargon.feather.Provides;
 import org.floens.chan.core.net.BitmapLruImageCache;
+import org.floens.chan.core.site.loader.ThreadSnapshotStore;
+
+import java.io.File;
 
 import javax.inject.Singleton;
 
 public class AppModule {
+    private static final String THREAD_SNAPSHOTS_NAME = "thread_snapshots";
+
     private Context applicationContext;
     private UserAgentProvider userAgentProvider;
 
@@ -31,6 +36,12 @@ public class AppModule {
         return userAgentProvider;
     }
 
+    @Provides
+    @Singleton
+    public ThreadSnapshotStore provideThreadSnapshotStore(Context applicationContext) {
+        return new ThreadSnapshotStore(new File(applicationContext.getCacheDir(), THREAD_SNAPSHOTS_NAME));
+    }
+
     @Provides
     @Singleton
     public ImageLoader provideImageLoader(RequestQueue requestQueue) {
@@ -7,27 +7,99 @@ import com.android.volley.toolbox.Volley;
 
 import org.codejargon.feather.Provides;
 import org.floens.chan.core.cache.FileCache;
-import org.floens.chan.core.net.ProxiedHurlStack;
+import org.floens.chan.core.net.OkHttpStack;
+import org.floens.chan.core.settings.ChanSettings;
+import org.floens.chan.utils.Logger;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Singleton;
 
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.dnsoverhttps.DnsOverHttps;
+
 public class NetModule {
+    private static final String TAG = "NetModule";
     private static final long FILE_CACHE_DISK_SIZE = 50 * 1024 * 1024;
     private static final String FILE_CACHE_NAME = "filecache";
+    private static final int TIMEOUT = 30000;
+
+    /**
+     * The client for all network requests: Volley, the file cache and site http calls. Clients
+     * derived from it with {@link OkHttpClient#newBuilder()} share its connection pool, so
+     * requests to the same host reuse connections regardless of which path made them.
+     */
+    @Provides
+    @Singleton
+    public OkHttpClient provideOkHttpClient() {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .connectTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                .readTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                .writeTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                // Disable SPDY, causes reproducible timeouts, only one download at the same time and other fun stuff
+                .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                .proxySelector(new SettingsProxySelector())
+                .build();
+
+        if (ChanSettings.dnsOverHttps.get()) {
+            try {
+                client = client.newBuilder()
+                        .dns(new DnsOverHttps.Builder().client(client)
+                                .url(HttpUrl.parse("https://cloudflare-dns.com/dns-query"))
+                                .bootstrapDnsHosts(Arrays.asList(
+                                        InetAddress.getByName("162.159.36.1"),
+                                        InetAddress.getByName("162.159.46.1"),
+                                        InetAddress.getByName("1.1.1.1"),
+                                        InetAddress.getByName("1.0.0.1"),
+                                        InetAddress.getByName("162.159.132.53"),
+                                        InetAddress.getByName("2606:4700:4700::1111"),
+                                        InetAddress.getByName("2606:4700:4700::1001"),
+                                        InetAddress.getByName("2606:4700:4700::0064"),
+                                        InetAddress.getByName("2606:4700:4700::6400")
+                                ))
+                                .build())
+                        .build();
+            } catch (UnknownHostException e) {
+                Logger.e(TAG, "Error Dns over https", e);
+            }
+        }
+
+        // Connections made before a proxy change would otherwise be reused.
+        OkHttpClient finalClient = client;
+        ChanSettings.proxyEnabled.addCallback((setting, value) -> finalClient.connectionPool().evictAll());
+        ChanSettings.proxyAddress.addCallback((setting, value) -> finalClient.connectionPool().evictAll());
+        ChanSettings.proxyPort.addCallback((setting, value) -> finalClient.connectionPool().evictAll());
+
+        return client;
+    }
 
     @Provides
     @Singleton
-    public RequestQueue provideRequestQueue(Context applicationContext, UserAgentProvider userAgentProvider) {
+    public RequestQueue provideRequestQueue(Context applicationContext, UserAgentProvider userAgentProvider,
+                                            OkHttpClient okHttpClient) {
         String userAgent = userAgentProvider.getUserAgent();
-        return Volley.newRequestQueue(applicationContext, new ProxiedHurlStack(userAgent));
+        return Volley.newRequestQueue(applicationContext, new OkHttpStack(okHttpClient, userAgent));
     }
 
     @Provides
     @Singleton
-    public FileCache provideFileCache(Context applicationContext, UserAgentProvider userAgentProvider) {
-        return new FileCache(new File(getCacheDir(applicationContext), FILE_CACHE_NAME), FILE_CACHE_DISK_SIZE, userAgentProvider.getUserAgent());
+    public FileCache provideFileCache(Context applicationContext, UserAgentProvider userAgentProvider,
+                                      OkHttpClient okHttpClient) {
+        return new FileCache(new File(getCacheDir(applicationContext), FILE_CACHE_NAME), FILE_CACHE_DISK_SIZE,
+                userAgentProvider.getUserAgent(), okHttpClient, ChanSettings.http2Downloads.get());
     }
 
     private File getCacheDir(Context applicationContext) {
@@ -38,4 +110,20 @@ public class NetModule {
             return applicationContext.getCacheDir();
         }
     }
+
+    /**
+     * Picks the proxy from the settings for every connection, so that changing the proxy
+     * settings applies without rebuilding the client.
+     */
+    private static class SettingsProxySelector extends ProxySelector {
+        @Override
+        public List<Proxy> select(URI uri) {
+            Proxy proxy = ChanSettings.getProxy();
+            return Collections.singletonList(proxy != null ? proxy : Proxy.NO_PROXY);
+        }
+
+        @Override
+        public void connectFailed(URI uri, SocketAddress sa, IOException ioe) {
+        }
+    }
 }
@@ -0,0 +1,380 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.manager;
+
+import androidx.annotation.AnyThread;
+
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.PostImage;
+import org.floens.chan.core.model.orm.Filter;
+import org.floens.chan.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A list of filters compiled for matching many posts, made with
+ * {@link FilterEngine#compileFilters(List)}.
+ * <p>
+ * The tripcode, name and id filters are looked up in a map by their exact text. For the regex
+ * fields all word and phrase filters go in one {@link LiteralMatcher} per field, only the
+ * filters of which a literal occurs in the text are run. The {@code /regex/} filters have no
+ * literal, those are first tried as one merged pattern. A filter only matches when its own
+ * pattern finds a match, so the result is the same as calling
+ * {@link FilterEngine#matches(Filter, Post.Builder)} for every filter.
+ * <p>
+ * Immutable and safe to use from multiple threads.
+ */
+public class CompiledFilters {
+    private static final String TAG = "CompiledFilters";
+
+    private static final Pattern UNMERGEABLE_PATTERN = Pattern.compile("\\\\([1-9]|k<|Q)");
+
+    public static final CompiledFilters EMPTY =
+            new CompiledFilters(null, Collections.<Filter>emptyList());
+
+    private final List<Filter> filters;
+    private final Pattern[] patterns;
+
+    private final Map<String, int[]> tripcodes;
+    private final Map<String, int[]> names;
+    private final Map<String, int[]> ids;
+    private final Field comment;
+    private final Field subject;
+    private final Field filename;
+
+    CompiledFilters(FilterEngine filterEngine, List<Filter> filters) {
+        this.filters = filters;
+        patterns = new Pattern[filters.size()];
+
+        Map<String, List<Integer>> tripcodes = new HashMap<>();
+        Map<String, List<Integer>> names = new HashMap<>();
+        Map<String, List<Integer>> ids = new HashMap<>();
+        Field.Builder comment = new Field.Builder();
+        Field.Builder subject = new Field.Builder();
+        Field.Builder filename = new Field.Builder();
+
+        for (int i = 0; i < filters.size(); i++) {
+            Filter filter = filters.get(i);
+            if (filter.pattern == null) {
+                continue;
+            }
+
+            addExact(tripcodes, filter, FilterType.TRIPCODE, i);
+            addExact(names, filter, FilterType.NAME, i);
+            addExact(ids, filter, FilterType.ID, i);
+
+            if ((filter.type & (FilterType.COMMENT.flag | FilterType.SUBJECT.flag
+                    | FilterType.FILENAME.flag)) == 0) {
+                continue;
+            }
+
+            Pattern pattern = filterEngine.compile(filter.pattern);
+            if (pattern == null) {
+                Logger.e(TAG, "Invalid pattern");
+                continue;
+            }
+            patterns[i] = pattern;
+
+            List<String> literals = filterEngine.getRequiredLiterals(filter.pattern);
+            comment.add(filter, FilterType.COMMENT, i, pattern, literals);
+            subject.add(filter, FilterType.SUBJECT, i, pattern, literals);
+            filename.add(filter, FilterType.FILENAME, i, pattern, literals);
+        }
+
+        this.tripcodes = toArrays(tripcodes);
+        this.names = toArrays(names);
+        this.ids = toArrays(ids);
+        this.comment = comment.build();
+        this.subject = subject.build();
+        this.filename = filename.build();
+    }
+
+    public boolean isEmpty() {
+        return filters.isEmpty();
+    }
+
+    /**
+     * All filters that match the post, in the order of the filter list.
+     */
+    @AnyThread
+    public List<Filter> match(Post.Builder post) {
+        return match(post.tripcode, post.name, post.posterId, post.subject, post.comment,
+                post.images);
+    }
+
+    /**
+     * All filters that match the parsed post, the same as when the post was still a builder.
+     *
+     * @param rawComment the comment html the post was parsed from.
+     */
+    @AnyThread
+    public List<Filter> match(Post post, String rawComment) {
+        return match(post.tripcode, post.name, post.rawPosterId, post.subject, rawComment,
+                post.images);
+    }
+
+    /**
+     * The outcome of the filters on the post, the last matching filter decides.
+     */
+    @AnyThread
+    public Result filter(Post.Builder post) {
+        return Result.of(match(post));
+    }
+
+    @AnyThread
+    public Result filter(Post post, String rawComment) {
+        return Result.of(match(post, rawComment));
+    }
+
+    private List<Filter> match(String tripcode, String name, String posterId, String subject,
+                               CharSequence comment, List<PostImage> images) {
+        if (filters.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        BitSet matched = new BitSet(filters.size());
+
+        matchExact(tripcodes, tripcode, matched);
+        matchExact(names, name, matched);
+        matchExact(ids, posterId, matched);
+
+        if (!this.comment.isEmpty()) {
+            this.comment.match(this, comment.toString(), matched);
+        }
+        this.subject.match(this, subject, matched);
+
+        if (images != null && !filename.isEmpty()) {
+            StringBuilder filenames = new StringBuilder();
+            for (PostImage image : images) {
+                filenames.append(image.filename).append(" ");
+            }
+            if (filenames.length() > 0) {
+                filename.match(this, filenames.toString(), matched);
+            }
+        }
+
+        if (matched.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Filter> result = new ArrayList<>(matched.cardinality());
+        for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+            result.add(filters.get(i));
+        }
+        return result;
+    }
+
+    private boolean find(int index, String text) {
+        try {
+            return patterns[index].matcher(text).find();
+        } catch (IllegalArgumentException e) {
+            Logger.w(TAG, "matcher.find() exception", e);
+            return false;
+        }
+    }
+
+    private static void addExact(Map<String, List<Integer>> map, Filter filter,
+                                 FilterType type, int index) {
+        if ((filter.type & type.flag) == 0) {
+            return;
+        }
+
+        List<Integer> indexes = map.get(filter.pattern);
+        if (indexes == null) {
+            indexes = new ArrayList<>(1);
+            map.put(filter.pattern, indexes);
+        }
+        indexes.add(index);
+    }
+
+    private static void matchExact(Map<String, int[]> map, String text, BitSet matched) {
+        if (text == null || map.isEmpty()) {
+            return;
+        }
+
+        int[] indexes = map.get(text);
+        if (indexes != null) {
+            for (int index : indexes) {
+                matched.set(index);
+            }
+        }
+    }
+
+    private static Map<String, int[]> toArrays(Map<String, List<Integer>> map) {
+        Map<String, int[]> result = new HashMap<>(map.size());
+        for (Map.Entry<String, List<Integer>> entry : map.entrySet()) {
+            result.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        return result;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    public static class Result {
+        public static final Result NONE = new Result(0, false, false);
+        private static final Result HIDE = new Result(0, true, false);
+        private static final Result REMOVE = new Result(0, false, true);
+
+        public final int highlightedColor;
+        public final boolean stub;
+        public final boolean remove;
+
+        private Result(int highlightedColor, boolean stub, boolean remove) {
+            this.highlightedColor = highlightedColor;
+            this.stub = stub;
+            this.remove = remove;
+        }
+
+        private static Result of(List<Filter> matched) {
+            if (matched.isEmpty()) {
+                return NONE;
+            }
+
+            Filter last = matched.get(matched.size() - 1);
+            switch (FilterEngine.FilterAction.forId(last.action)) {
+                case COLOR:
+                    return new Result(last.color, false, false);
+                case HIDE:
+                    return HIDE;
+                case REMOVE:
+                    return REMOVE;
+                default:
+                    return NONE;
+            }
+        }
+    }
+
+    /**
+     * The matchers of one regex field.
+     */
+    private static class Field {
+        private final LiteralMatcher literals;
+        // Filters without a literal, run on every text.
+        private final int[] always;
+        // All patterns of always in one alternation, null if they could not be merged.
+        private final Pattern merged;
+
+        private Field(LiteralMatcher literals, int[] always, Pattern merged) {
+            this.literals = literals;
+            this.always = always;
+            this.merged = merged;
+        }
+
+        boolean isEmpty() {
+            return literals == null && always.length == 0;
+        }
+
+        void match(CompiledFilters filters, String text, BitSet matched) {
+            if (text == null) {
+                return;
+            }
+
+            if (literals != null) {
+                BitSet candidates = new BitSet();
+                literals.match(text, candidates);
+                for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                    if (!matched.get(i) && filters.find(i, text)) {
+                        matched.set(i);
+                    }
+                }
+            }
+
+            if (always.length > 0) {
+                if (merged != null && always.length > 1) {
+                    try {
+                        if (!merged.matcher(text).find()) {
+                            return;
+                        }
+                    } catch (IllegalArgumentException e) {
+                        Logger.w(TAG, "matcher.find() exception", e);
+                    }
+                }
+
+                // Which one of the merged patterns found a match is not known, run them all.
+                for (int index : always) {
+                    if (!matched.get(index) && filters.find(index, text)) {
+                        matched.set(index);
+                    }
+                }
+            }
+        }
+
+        static class Builder {
+            private final LiteralMatcher.Builder literals = new LiteralMatcher.Builder();
+            private final List<Integer> always = new ArrayList<>();
+            private final StringBuilder merged = new StringBuilder();
+            private boolean canMerge = true;
+
+            void add(Filter filter, FilterType type, int index, Pattern pattern,
+                     List<String> required) {
+                if ((filter.type & type.flag) == 0) {
+                    return;
+                }
+
+                if (required != null) {
+                    for (String literal : required) {
+                        literals.add(literal, index);
+                    }
+                    return;
+                }
+
+                always.add(index);
+
+                // Groups are renumbered in an alternation and a \Q quote would swallow the
+                // closing paren, don't merge patterns with backreferences or quotes.
+                String regex = pattern.pattern();
+                if ((pattern.flags() & ~Pattern.CASE_INSENSITIVE) != 0
+                        || UNMERGEABLE_PATTERN.matcher(regex).find()) {
+                    canMerge = false;
+                }
+                if (merged.length() > 0) {
+                    merged.append('|');
+                }
+                boolean caseInsensitive = (pattern.flags() & Pattern.CASE_INSENSITIVE) != 0;
+                merged.append(caseInsensitive ? "(?i:" : "(?:").append(regex).append(')');
+            }
+
+            Field build() {
+                Pattern mergedPattern = null;
+                if (canMerge && always.size() > 1) {
+                    try {
+                        mergedPattern = Pattern.compile(merged.toString());
+                    } catch (PatternSyntaxException e) {
+                        Logger.w(TAG, "Could not merge patterns", e);
+                    }
+                }
+
+                return new Field(literals.isEmpty() ? null : literals.build(),
+                        toArray(always), mergedPattern);
+            }
+        }
+    }
+}
@@ -31,9 +31,12 @@ import org.floens.chan.ui.helper.BoardHelper;
 import org.floens.chan.utils.Logger;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -76,44 +79,84 @@ public class FilterEngine {
 
     private final Map<String, Pattern> patternCache = new HashMap<>();
 
+    private static final int COMPILED_FILTERS_CACHE_SIZE = 8;
+    // Keyed by the fingerprint of the filter list, most boards share the same list.
+    private final Map<String, CompiledFilters> compiledFiltersCache =
+            new LinkedHashMap<String, CompiledFilters>(0, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompiledFilters> eldest) {
+                    return size() > COMPILED_FILTERS_CACHE_SIZE;
+                }
+            };
+
+    // Only replaced on the database thread, after the change that it reflects.
+    private volatile FilterSnapshot filterSnapshot;
+
     @Inject
     public FilterEngine(DatabaseManager databaseManager, BoardManager boardManager) {
         this.databaseManager = databaseManager;
         this.boardManager = boardManager;
         databaseFilterManager = databaseManager.getDatabaseFilterManager();
+
+        databaseManager.runTaskAsync(loadFilterSnapshot());
     }
 
     public void deleteFilter(Filter filter) {
-        databaseManager.runTask(databaseFilterManager.deleteFilter(filter));
+        databaseManager.runTask(changeAndReload(databaseFilterManager.deleteFilter(filter)));
     }
 
     public void createOrUpdateFilter(Filter filter) {
         if (filter.id == 0) {
-            databaseManager.runTask(databaseFilterManager.createFilter(filter));
+            databaseManager.runTask(changeAndReload(databaseFilterManager.createFilter(filter)));
         } else {
-            databaseManager.runTask(databaseFilterManager.updateFilter(filter));
+            databaseManager.runTask(changeAndReload(databaseFilterManager.updateFilter(filter)));
         }
     }
 
-    public List<Filter> getEnabledFilters() {
-        List<Filter> filters = databaseManager.runTask(databaseFilterManager.getFilters());
-        List<Filter> enabled = new ArrayList<>();
-        for (Filter filter : filters) {
-            if (filter.enabled) {
-                enabled.add(filter);
-            }
+    /**
+     * Reload the filter snapshot, for when the filters were changed in the database without the
+     * FilterEngine.
+     */
+    @AnyThread
+    public void reloadFilters() {
+        databaseManager.runTaskAsync(loadFilterSnapshot());
+    }
+
+    /**
+     * The enabled filters, without a database query. Only waits for the database when the
+     * first load did not finish yet.
+     */
+    @AnyThread
+    public FilterSnapshot getFilterSnapshot() {
+        FilterSnapshot snapshot = filterSnapshot;
+        if (snapshot == null) {
+            snapshot = databaseManager.runTask(loadFilterSnapshot());
         }
+        return snapshot;
+    }
 
-        return enabled;
+    private Callable<FilterSnapshot> changeAndReload(Callable<?> change) {
+        Callable<FilterSnapshot> load = loadFilterSnapshot();
+        return () -> {
+            change.call();
+            return load.call();
+        };
     }
 
-    public List<Filter> getAllFilters() {
-        try {
-            return databaseFilterManager.getFilters().call();
-        } catch (Exception e) {
-            Logger.wtf(TAG, "Couldn't get all filters for some reason.");
-            return new ArrayList<>();
-        }
+    private Callable<FilterSnapshot> loadFilterSnapshot() {
+        return () -> {
+            FilterSnapshot snapshot = new FilterSnapshot(databaseFilterManager.getFilters().call());
+            filterSnapshot = snapshot;
+            return snapshot;
+        };
+    }
+
+    /**
+     * All filters, also the disabled ones, as new objects that may be changed. Given on the main
+     * thread.
+     */
+    public void getAllFiltersAsync(DatabaseManager.TaskResult<List<Filter>> result) {
+        databaseManager.runTaskAsync(databaseFilterManager.getFilters(), result);
     }
 
     @AnyThread
@@ -186,6 +229,45 @@ public class FilterEngine {
         return false;
     }
 
+    /**
+     * Compile the filters for matching many posts. The result is cached for as long as the
+     * filters do not change.
+     *
+     * @param filters the enabled filters, in order. They must not be changed afterwards.
+     */
+    @AnyThread
+    public CompiledFilters compileFilters(List<Filter> filters) {
+        if (filters.isEmpty()) {
+            return CompiledFilters.EMPTY;
+        }
+
+        StringBuilder fingerprint = new StringBuilder();
+        for (Filter filter : filters) {
+            fingerprint.append(filter.id).append(':')
+                    .append(filter.type).append(':')
+                    .append(filter.action).append(':')
+                    .append(filter.color).append(':');
+            if (filter.pattern != null) {
+                fingerprint.append(filter.pattern.length()).append(':').append(filter.pattern);
+            }
+            fingerprint.append(';');
+        }
+        String key = fingerprint.toString();
+
+        synchronized (compiledFiltersCache) {
+            CompiledFilters compiled = compiledFiltersCache.get(key);
+            if (compiled != null) {
+                return compiled;
+            }
+        }
+
+        CompiledFilters compiled = new CompiledFilters(this, filters);
+        synchronized (compiledFiltersCache) {
+            compiledFiltersCache.put(key, compiled);
+        }
+        return compiled;
+    }
+
     @AnyThread
     public boolean matches(Filter filter, boolean matchRegex, String text, boolean forceCompile) {
         if (matchRegex) {
@@ -274,6 +356,46 @@ public class FilterEngine {
         return pattern;
     }
 
+    /**
+     * Literals of which at least one occurs, ignoring ASCII case, in any text that the pattern
+     * made by {@link #compile(String)} finds a match in.
+     *
+     * @return the literals, or {@code null} if there are none for this pattern, for example
+     * for a /regex/ or a word that is only a wildcard.
+     */
+    @AnyThread
+    List<String> getRequiredLiterals(String rawPattern) {
+        if (TextUtils.isEmpty(rawPattern) || isRegexPattern.matcher(rawPattern).matches()) {
+            return null;
+        }
+
+        if (rawPattern.length() >= 2 && rawPattern.charAt(0) == '"' && rawPattern.charAt(rawPattern.length() - 1) == '"') {
+            String phrase = rawPattern.substring(1, rawPattern.length() - 1);
+            return phrase.isEmpty() ? null : Collections.singletonList(phrase);
+        }
+
+        String[] words = rawPattern.split(" ");
+        if (words.length == 0) {
+            return null;
+        }
+
+        List<String> literals = new ArrayList<>(words.length);
+        for (String word : words) {
+            // The longest part between wildcards, every match of the word contains it.
+            String longest = "";
+            for (String part : word.split("\\*")) {
+                if (part.length() > longest.length()) {
+                    longest = part;
+                }
+            }
+            if (longest.isEmpty()) {
+                return null;
+            }
+            literals.add(longest);
+        }
+        return literals;
+    }
+
     private String escapeRegex(String filthy) {
         return filterFilthyPattern.matcher(filthy).replaceAll("\\\\$1"); // Escape regex special characters with a \
     }
@@ -0,0 +1,143 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.manager;
+
+import android.text.TextUtils;
+
+import androidx.annotation.AnyThread;
+
+import org.floens.chan.core.model.orm.Board;
+import org.floens.chan.core.model.orm.Filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The enabled filters at one point in time, indexed by board. Kept by the {@link FilterEngine}
+ * and replaced as a whole when a filter is changed, so that it can be read from any thread
+ * without going to the database.
+ * <p>
+ * The filters in here are not shared with the database layer and must not be modified.
+ */
+public class FilterSnapshot {
+    public static final FilterSnapshot EMPTY = new FilterSnapshot(Collections.<Filter>emptyList());
+
+    private final int size;
+    private final List<Filter> allBoards;
+    // Board key to the all board filters and the filters for that board, in filter order.
+    private final Map<String, List<Filter>> byBoard;
+
+    FilterSnapshot(List<Filter> filters) {
+        List<Filter> enabled = new ArrayList<>();
+        List<Set<String>> boardKeys = new ArrayList<>();
+        Map<String, List<Filter>> byBoard = new HashMap<>();
+
+        for (Filter filter : filters) {
+            if (!filter.enabled) {
+                continue;
+            }
+
+            Set<String> keys = null;
+            if (!filter.allBoards && !TextUtils.isEmpty(filter.boards)) {
+                keys = new LinkedHashSet<>();
+                for (String uniqueId : filter.boards.split(",")) {
+                    String key = parseUniqueId(uniqueId);
+                    if (key != null) {
+                        keys.add(key);
+                        byBoard.put(key, new ArrayList<Filter>());
+                    }
+                }
+            }
+
+            enabled.add(filter);
+            boardKeys.add(keys);
+        }
+
+        List<Filter> allBoards = new ArrayList<>();
+        for (int i = 0; i < enabled.size(); i++) {
+            Filter filter = enabled.get(i);
+            Set<String> keys = boardKeys.get(i);
+            if (keys == null) {
+                allBoards.add(filter);
+                for (List<Filter> boardFilters : byBoard.values()) {
+                    boardFilters.add(filter);
+                }
+            } else {
+                for (String key : keys) {
+                    byBoard.get(key).add(filter);
+                }
+            }
+        }
+
+        for (Map.Entry<String, List<Filter>> entry : byBoard.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+
+        size = enabled.size();
+        this.allBoards = Collections.unmodifiableList(allBoards);
+        this.byBoard = byBoard;
+    }
+
+    /**
+     * {@code true} if there are no enabled filters at all.
+     */
+    @AnyThread
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * The enabled filters that apply to the board, in filter order. The same as checking
+     * {@link FilterEngine#matchesBoard(Filter, Board)} for every enabled filter.
+     */
+    @AnyThread
+    public List<Filter> getFilters(Board board) {
+        List<Filter> filters = byBoard.get(boardKey(board.site.id(), board.code));
+        return filters != null ? filters : allBoards;
+    }
+
+    /**
+     * Same rules as {@link org.floens.chan.ui.helper.BoardHelper#matchesUniqueId(Board, String)},
+     * a unique id without a site id is of site 0.
+     */
+    private static String parseUniqueId(String uniqueId) {
+        if (!uniqueId.contains(":")) {
+            return boardKey(0, uniqueId);
+        }
+
+        String[] splitted = uniqueId.split(":");
+        if (splitted.length != 2) {
+            return null;
+        }
+
+        try {
+            return boardKey(Integer.parseInt(splitted[0]), splitted[1]);
+        } catch (NumberFormatException ignored) {
+            return null;
+        }
+    }
+
+    private static String boardKey(int siteId, String code) {
+        return siteId + ":" + code;
+    }
+}
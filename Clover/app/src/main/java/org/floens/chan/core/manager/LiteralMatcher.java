@@ -0,0 +1,178 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.manager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton that finds which of a set of literals occur in a text, in one pass
+ * over the text. Every literal is tagged with an id, all ids of the literals that occur are
+ * collected.
+ * <p>
+ * Matching ignores the case of US-ASCII letters only, the same as a {@link java.util.regex.Pattern}
+ * compiled with {@code CASE_INSENSITIVE} and without {@code UNICODE_CASE}.
+ * <p>
+ * Immutable once built, edges are stored as sorted char arrays to avoid boxing while matching.
+ */
+class LiteralMatcher {
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] fail;
+    // Ids of the literals ending at this node, including the ones of its fail chain.
+    private final int[][] outputs;
+
+    private LiteralMatcher(char[][] edgeChars, int[][] edgeTargets, int[] fail, int[][] outputs) {
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.fail = fail;
+        this.outputs = outputs;
+    }
+
+    /**
+     * Set the ids of all literals that occur in the text.
+     */
+    void match(String text, BitSet ids) {
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = fold(text.charAt(i));
+
+            int next;
+            while ((next = edge(node, c)) < 0 && node != 0) {
+                node = fail[node];
+            }
+            node = next < 0 ? 0 : next;
+
+            int[] output = outputs[node];
+            for (int j = 0; j < output.length; j++) {
+                ids.set(output[j]);
+            }
+        }
+    }
+
+    static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private int edge(int node, char c) {
+        int index = Arrays.binarySearch(edgeChars[node], c);
+        return index >= 0 ? edgeTargets[node][index] : -1;
+    }
+
+    static class Builder {
+        private final List<TreeMap<Character, Integer>> edges = new ArrayList<>();
+        private final List<List<Integer>> ids = new ArrayList<>();
+
+        Builder() {
+            addNode();
+        }
+
+        boolean isEmpty() {
+            return edges.size() == 1;
+        }
+
+        Builder add(String literal, int id) {
+            int node = 0;
+            for (int i = 0; i < literal.length(); i++) {
+                Character c = fold(literal.charAt(i));
+                Integer next = edges.get(node).get(c);
+                if (next == null) {
+                    next = addNode();
+                    edges.get(node).put(c, next);
+                }
+                node = next;
+            }
+            ids.get(node).add(id);
+            return this;
+        }
+
+        LiteralMatcher build() {
+            int count = edges.size();
+            char[][] edgeChars = new char[count][];
+            int[][] edgeTargets = new int[count][];
+            for (int node = 0; node < count; node++) {
+                TreeMap<Character, Integer> nodeEdges = edges.get(node);
+                edgeChars[node] = new char[nodeEdges.size()];
+                edgeTargets[node] = new int[nodeEdges.size()];
+                int i = 0;
+                for (Map.Entry<Character, Integer> edge : nodeEdges.entrySet()) {
+                    edgeChars[node][i] = edge.getKey();
+                    edgeTargets[node][i] = edge.getValue();
+                    i++;
+                }
+            }
+
+            // Breadth first, the fail link of a node is always closer to the root.
+            int[] fail = new int[count];
+            int[][] outputs = new int[count][];
+            outputs[0] = toArray(ids.get(0), null);
+
+            Deque<Integer> queue = new ArrayDeque<>();
+            for (int child : edgeTargets[0]) {
+                fail[child] = 0;
+                outputs[child] = toArray(ids.get(child), outputs[0]);
+                queue.add(child);
+            }
+
+            LiteralMatcher partial = new LiteralMatcher(edgeChars, edgeTargets, fail, outputs);
+            while (!queue.isEmpty()) {
+                int node = queue.poll();
+                for (int i = 0; i < edgeChars[node].length; i++) {
+                    char c = edgeChars[node][i];
+                    int child = edgeTargets[node][i];
+
+                    int f = fail[node];
+                    int next;
+                    while ((next = partial.edge(f, c)) < 0 && f != 0) {
+                        f = fail[f];
+                    }
+                    fail[child] = next < 0 || next == child ? 0 : next;
+                    outputs[child] = toArray(ids.get(child), outputs[fail[child]]);
+
+                    queue.add(child);
+                }
+            }
+
+            return partial;
+        }
+
+        private int addNode() {
+            edges.add(new TreeMap<Character, Integer>());
+            ids.add(new ArrayList<Integer>(0));
+            return edges.size() - 1;
+        }
+
+        private static int[] toArray(List<Integer> own, int[] inherited) {
+            int inheritedLength = inherited == null ? 0 : inherited.length;
+            int[] result = new int[own.size() + inheritedLength];
+            for (int i = 0; i < own.size(); i++) {
+                result[i] = own.get(i);
+            }
+            if (inheritedLength > 0) {
+                System.arraycopy(inherited, 0, result, own.size(), inheritedLength);
+            }
+            return result;
+        }
+    }
+}
@@ -825,6 +825,12 @@ public class WatchManager {
             pinWatcherUpdated(this);
         }
 
+        @Override
+        public void onChanLoaderFiltered(ChanThread thread, List<Post> changed,
+                                         boolean removedChanged) {
+            // Reply counts and notifications do not depend on filters.
+        }
+
         @Override
         public void onChanLoaderData(ChanThread thread) {
             pin.isError = false;
@@ -861,7 +867,7 @@ public class WatchManager {
             // Now get a list of posts that have a quote to a saved reply
             out:
             for (Post post : thread.posts) {
-                for (Integer no : post.repliesTo) {
+                for (int no : post.getRepliesTo()) {
                     if (savedReplies.contains(no)) {
                         quotes.add(post);
                         continue out;
@@ -17,6 +17,8 @@
  */
 package org.floens.chan.core.model;
 
+import androidx.annotation.MainThread;
+
 import org.floens.chan.core.model.orm.Loadable;
 
 import java.util.List;
@@ -28,8 +30,37 @@ public class ChanThread {
     public boolean closed = false;
     public boolean archived = false;
 
+    private PostIndex postIndex = PostIndex.EMPTY;
+
     public ChanThread(Loadable loadable, List<Post> posts) {
         this.loadable = loadable;
         this.posts = posts;
     }
+
+    /**
+     * Replace the posts, and update the index for the new posts.
+     */
+    @MainThread
+    public void setPosts(List<Post> newPosts) {
+        posts.clear();
+        posts.addAll(newPosts);
+        postIndex = PostIndex.build(postIndex, posts);
+    }
+
+    /**
+     * Post no to index in {@link #posts}.
+     */
+    @MainThread
+    public PostIndex getPostIndex() {
+        return postIndex;
+    }
+
+    /**
+     * The post with the no, or {@code null} if it is not in the thread.
+     */
+    @MainThread
+    public Post findPostByNo(int no) {
+        int index = postIndex.indexOf(no);
+        return index >= 0 ? posts.get(index) : null;
+    }
 }
@@ -17,11 +17,13 @@
  */
 package org.floens.chan.core.model;
 
+import androidx.annotation.AnyThread;
 import androidx.annotation.MainThread;
 
 import org.floens.chan.core.model.orm.Board;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -45,8 +47,6 @@ public class Post {
 
     public final String name;
 
-    public final CharSequence comment;
-
     public final String subject;
 
     /**
@@ -60,25 +60,22 @@ public class Post {
 
     public final String id;
 
+    /**
+     * The poster id as the site sent it, also when {@link #id} is anonymized. Used to filter the
+     * post again.
+     */
+    public final String rawPosterId;
+
     public final String capcode;
 
     public final List<PostHttpIcon> httpIcons;
 
     public final boolean isSavedReply;
 
-    public final int filterHighlightedColor;
-
-    public final boolean filterStub;
-
-    public final boolean filterRemove;
-
     /**
-     * This post replies to the these ids.
+     * The subject in the subject color, also when the post is shown as a stub. Stubs use
+     * {@link #subject} for their own color.
      */
-    public final Set<Integer> repliesTo;
-
-    public final List<PostLinkable> linkables;
-
     public final CharSequence subjectSpan;
 
     public final CharSequence nameTripcodeIdCapcodeSpan;
@@ -89,12 +86,24 @@ public class Post {
      */
     public final AtomicBoolean deleted = new AtomicBoolean(false);
 
-    /**
-     * These ids replied to this post.
-     * <p><b>Manual synchronization is needed, since this list can be modified from any thread.
-     * Wrap all accesses in a {@code synchronized} block.</b>
-     */
-    public final List<Integer> repliesFrom = new ArrayList<>();
+    // This post replies to these ids, sorted.
+    private final int[] repliesTo;
+
+    // Replaced on every load of the thread, see setReplyGraph().
+    private volatile ReplyGraph replyGraph;
+
+    // Set when parsed, and again when the thread is filtered again, see setFilter(). Kept on the
+    // post instead of in an overlay per thread: every loader parses its own posts, so a post
+    // belongs to one thread only, and all listeners of that loader should see the same outcome.
+    // Nothing that is built at parse time may depend on these, the cells read them when bound.
+    private volatile int filterHighlightedColor;
+    private volatile boolean filterStub;
+    private volatile boolean filterRemove;
+
+    // Replaced once when a deferred comment is parsed, see parseDeferredComment().
+    private volatile CharSequence comment;
+    private volatile List<PostLinkable> linkables;
+    private volatile DeferredComment deferredComment;
 
     // These members may only mutate on the main thread.
     private boolean sticky;
@@ -139,6 +148,7 @@ public class Post {
         }
 
         id = builder.posterId;
+        rawPosterId = builder.rawPosterId;
         capcode = builder.moderatorCapcode;
 
         filterHighlightedColor = builder.filterHighlightedColor;
@@ -150,8 +160,139 @@ public class Post {
         subjectSpan = builder.subjectSpan;
         nameTripcodeIdCapcodeSpan = builder.nameTripcodeIdCapcodeSpan;
 
-        linkables = Collections.unmodifiableList(builder.linkables);
-        repliesTo = Collections.unmodifiableSet(builder.repliesToIds);
+        // Copied, a deferred comment keeps adding to the builder when it is parsed.
+        linkables = Collections.unmodifiableList(new ArrayList<>(builder.linkables));
+        repliesTo = new int[builder.repliesToIds.size()];
+        int i = 0;
+        for (int replyTo : builder.repliesToIds) {
+            repliesTo[i++] = replyTo;
+        }
+        Arrays.sort(repliesTo);
+        deferredComment = builder.deferredComment;
+    }
+
+    /**
+     * The ids this post replies to, sorted. Do not modify the returned array.
+     */
+    @AnyThread
+    public int[] getRepliesTo() {
+        return repliesTo;
+    }
+
+    /**
+     * The number of posts in the thread that reply to this post.
+     */
+    @AnyThread
+    public int getRepliesFromCount() {
+        ReplyGraph graph = replyGraph;
+        return graph == null ? 0 : graph.getRepliesFromCount(no);
+    }
+
+    /**
+     * The ids of the posts in the thread that reply to this post, in thread order.
+     */
+    @AnyThread
+    public int[] getRepliesFrom() {
+        ReplyGraph graph = replyGraph;
+        return graph == null ? new int[0] : graph.getRepliesFrom(no);
+    }
+
+    @AnyThread
+    public ReplyGraph getReplyGraph() {
+        return replyGraph;
+    }
+
+    /**
+     * Set the reply graph of the thread this post is in, done after every load.
+     */
+    @AnyThread
+    public void setReplyGraph(ReplyGraph replyGraph) {
+        this.replyGraph = replyGraph;
+    }
+
+    /**
+     * The comment of the post. A plain text placeholder while the comment is deferred, see
+     * {@link #isCommentParsed()}.
+     */
+    @AnyThread
+    public CharSequence getComment() {
+        return comment;
+    }
+
+    /**
+     * The links in the comment, empty while the comment is deferred.
+     */
+    @AnyThread
+    public List<PostLinkable> getLinkables() {
+        return linkables;
+    }
+
+    /**
+     * {@code false} when the rich comment was not parsed yet, {@link #getComment()} is a plain
+     * text placeholder then.
+     */
+    @AnyThread
+    public boolean isCommentParsed() {
+        return deferredComment == null;
+    }
+
+    /**
+     * Parse the deferred comment, replacing the placeholder and the linkables. Normally done on
+     * a worker thread by the {@link org.floens.chan.core.site.parser.CommentParseQueue}.
+     *
+     * @return {@code true} if the comment was parsed by this call.
+     */
+    @AnyThread
+    public boolean parseDeferredComment() {
+        DeferredComment deferred = deferredComment;
+        if (deferred == null) {
+            return false;
+        }
+
+        synchronized (deferred) {
+            if (deferredComment == null) {
+                return false;
+            }
+
+            CharSequence parsed = deferred.parse();
+            linkables = Collections.unmodifiableList(new ArrayList<>(deferred.getLinkables()));
+            comment = parsed;
+            deferredComment = null;
+            return true;
+        }
+    }
+
+    @AnyThread
+    public int getFilterHighlightedColor() {
+        return filterHighlightedColor;
+    }
+
+    @AnyThread
+    public boolean isFilterStub() {
+        return filterStub;
+    }
+
+    @AnyThread
+    public boolean isFilterRemove() {
+        return filterRemove;
+    }
+
+    /**
+     * Replace the filter outcome, when the filters changed after the post was parsed.
+     *
+     * @return {@code true} if the outcome is different from before.
+     */
+    @MainThread
+    public boolean setFilter(int highlightedColor, boolean stub, boolean remove) {
+        if (filterHighlightedColor == highlightedColor && filterStub == stub
+                && filterRemove == remove) {
+            return false;
+        }
+
+        filterHighlightedColor = highlightedColor;
+        filterStub = stub;
+        filterRemove = remove;
+        return true;
     }
 
     @MainThread
@@ -269,6 +410,7 @@ public class Post {
         public List<PostHttpIcon> httpIcons;
 
         public String posterId = "";
+        public String rawPosterId = "";
         public String moderatorCapcode = "";
 
         public int filterHighlightedColor;
@@ -282,6 +424,7 @@ public class Post {
 
         private List<PostLinkable> linkables = new ArrayList<>();
         private Set<Integer> repliesToIds = new HashSet<>();
+        private DeferredComment deferredComment;
 
         public Builder() {
         }
@@ -356,6 +499,11 @@ public class Post {
             return this;
         }
 
+        public Builder rawPosterId(String rawPosterId) {
+            this.rawPosterId = rawPosterId;
+            return this;
+        }
+
         public Builder tripcode(String tripcode) {
             this.tripcode = tripcode;
             return this;
@@ -423,6 +571,19 @@ public class Post {
             return this;
         }
 
+        /**
+         * Build the post with {@link #comment} as placeholder, the rich comment is parsed
+         * later by the given deferred comment.
+         */
+        public Builder deferComment(DeferredComment deferredComment) {
+            this.deferredComment = deferredComment;
+            return this;
+        }
+
+        public List<PostLinkable> getLinkables() {
+            return linkables;
+        }
+
         public Post build() {
             if (board == null || id < 0 || opId < 0 || unixTimestampSeconds < 0 || comment == null) {
                 throw new IllegalArgumentException("Post data not complete");
@@ -431,4 +592,21 @@ public class Post {
             return new Post(this);
         }
     }
+
+    /**
+     * A comment that is parsed on demand instead of when the post is built.
+     */
+    public interface DeferredComment {
+        /**
+         * Parse the comment, called at most once.
+         */
+        @AnyThread
+        CharSequence parse();
+
+        /**
+         * The linkables found by {@link #parse()}.
+         */
+        @AnyThread
+        List<PostLinkable> getLinkables();
+    }
 }
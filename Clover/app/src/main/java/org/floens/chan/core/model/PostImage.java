@@ -36,6 +36,10 @@ public class PostImage {
     public final int imageHeight;
     public final boolean spoiler;
     public final long size;
+    /**
+     * MD5 of the file as sent by the site, base64 encoded for 4chan. {@code null} if unknown.
+     */
+    public final String md5;
 
     public final Type type;
 
@@ -50,6 +54,7 @@ public class PostImage {
         this.imageHeight = builder.imageHeight;
         this.spoiler = builder.spoiler;
         this.size = builder.size;
+        this.md5 = builder.md5;
 
         switch (extension) {
             case "gif":
@@ -95,6 +100,7 @@ public class PostImage {
         private int imageHeight;
         private boolean spoiler;
         private long size;
+        private String md5;
 
         public Builder() {
         }
@@ -150,6 +156,11 @@ public class PostImage {
             return this;
         }
 
+        public Builder md5(String md5) {
+            this.md5 = md5;
+            return this;
+        }
+
         public PostImage build() {
             if (ChanSettings.revealImageSpoilers.get()) {
                 spoiler = false;
@@ -0,0 +1,137 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.model;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Maps post numbers to their index in a list of posts, with an open addressing int hash table.
+ * <p>
+ * An index is immutable once built. A new index for a list that starts with the same posts is
+ * built from the previous one, only the added posts are inserted.
+ */
+@AnyThread
+public class PostIndex {
+    private static final int FREE = -1;
+
+    public static final PostIndex EMPTY = build(null, Collections.<Post>emptyList());
+
+    private final int[] nos;
+    private final int[] keys;
+    private final int[] values;
+    private final int mask;
+
+    private PostIndex(int[] nos, int[] keys, int[] values, int mask) {
+        this.nos = nos;
+        this.keys = keys;
+        this.values = values;
+        this.mask = mask;
+    }
+
+    /**
+     * Build the index for the posts.
+     *
+     * @param previous the index of an older version of the list, reused for the posts that are
+     *                 still at the same position.
+     */
+    public static PostIndex build(@Nullable PostIndex previous, List<Post> posts) {
+        int count = posts.size();
+        int[] nos = new int[count];
+        for (int i = 0; i < count; i++) {
+            nos[i] = posts.get(i).no;
+        }
+
+        // At most half full.
+        int capacity = Integer.highestOneBit(Math.max(2, count) * 2 - 1) * 2;
+
+        int reuse = 0;
+        int[] keys;
+        int[] values;
+        if (previous != null && previous.keys.length == capacity) {
+            int length = Math.min(previous.nos.length, count);
+            while (reuse < length && previous.nos[reuse] == nos[reuse]) {
+                reuse++;
+            }
+        }
+
+        if (reuse > 0 && reuse == previous.nos.length) {
+            keys = previous.keys.clone();
+            values = previous.values.clone();
+        } else {
+            // Posts were removed or moved, start over.
+            reuse = 0;
+            keys = new int[capacity];
+            values = new int[capacity];
+            Arrays.fill(keys, FREE);
+        }
+
+        int mask = capacity - 1;
+        for (int i = reuse; i < count; i++) {
+            put(keys, values, mask, nos[i], i);
+        }
+
+        return new PostIndex(nos, keys, values, mask);
+    }
+
+    /**
+     * The index of the post, or -1 if it is not in the list.
+     */
+    public int indexOf(int no) {
+        int slot = hash(no) & mask;
+        while (true) {
+            int key = keys[slot];
+            if (key == no) {
+                return values[slot];
+            } else if (key == FREE) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public boolean contains(int no) {
+        return indexOf(no) >= 0;
+    }
+
+    public int size() {
+        return nos.length;
+    }
+
+    private static void put(int[] keys, int[] values, int mask, int no, int index) {
+        int slot = hash(no) & mask;
+        while (keys[slot] != FREE && keys[slot] != no) {
+            slot = (slot + 1) & mask;
+        }
+        // The first one wins for duplicates, like a linear scan.
+        if (keys[slot] == FREE) {
+            keys[slot] = no;
+            values[slot] = index;
+        }
+    }
+
+    private static int hash(int no) {
+        // Post numbers are sequential, spread them over the table.
+        int h = no * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.model;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The quotes between the posts of a thread, as int arrays in compressed sparse row form.
+ * <p>
+ * Posts are addressed by their ordinal, the index in the thread. The post numbers quoted by the
+ * post at ordinal {@code i} are {@code toNos[toOffsets[i]]} up to {@code toNos[toOffsets[i + 1]]},
+ * the posts quoting it are stored the same way in {@code fromNos}, in thread order.
+ * <p>
+ * A graph is immutable once built, it is shared by all posts of the thread and read from any
+ * thread without locking.
+ */
+@AnyThread
+public class ReplyGraph {
+    private static final int[] EMPTY = new int[0];
+
+    // Post no by ordinal.
+    private final int[] nos;
+    // Sorted nos with their ordinals, null if the nos are already ascending.
+    private final int[] sortedNos;
+    private final int[] sortedOrdinals;
+
+    private final int[] toOffsets;
+    private final int[] toNos;
+
+    private final int[] fromOffsets;
+    private final int[] fromNos;
+
+    private ReplyGraph(int[] nos, int[] toOffsets, int[] toNos) {
+        this.nos = nos;
+        this.toOffsets = toOffsets;
+        this.toNos = toNos;
+
+        if (isAscending(nos)) {
+            sortedNos = null;
+            sortedOrdinals = null;
+        } else {
+            // No boxing, the ordinal is packed into the low bits of the sort key.
+            long[] keys = new long[nos.length];
+            for (int i = 0; i < nos.length; i++) {
+                keys[i] = ((long) nos[i] << 32) | i;
+            }
+            Arrays.sort(keys);
+            sortedNos = new int[nos.length];
+            sortedOrdinals = new int[nos.length];
+            for (int i = 0; i < keys.length; i++) {
+                sortedNos[i] = (int) (keys[i] >> 32);
+                sortedOrdinals[i] = (int) keys[i];
+            }
+        }
+
+        int count = nos.length;
+        fromOffsets = new int[count + 1];
+        for (int i = 0; i < toNos.length; i++) {
+            int target = ordinalOf(toNos[i]);
+            // Quotes to posts not in the thread are left out.
+            if (target >= 0) {
+                fromOffsets[target + 1]++;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            fromOffsets[i + 1] += fromOffsets[i];
+        }
+
+        fromNos = new int[fromOffsets[count]];
+        int[] fill = Arrays.copyOf(fromOffsets, count);
+        for (int source = 0; source < count; source++) {
+            for (int i = toOffsets[source]; i < toOffsets[source + 1]; i++) {
+                int target = ordinalOf(toNos[i]);
+                if (target >= 0) {
+                    fromNos[fill[target]++] = nos[source];
+                }
+            }
+        }
+    }
+
+    /**
+     * Build the graph for the posts of a thread.
+     *
+     * @param previous the graph of the previous load, the quotes of the posts that are still at
+     *                 the same ordinal are copied from it instead of collected again.
+     */
+    @WorkerThread
+    public static ReplyGraph build(@Nullable ReplyGraph previous, List<Post> posts) {
+        int count = posts.size();
+        int[] nos = new int[count];
+        for (int i = 0; i < count; i++) {
+            nos[i] = posts.get(i).no;
+        }
+
+        int reuse = previous == null ? 0 : previous.commonPrefix(nos);
+
+        int edges = reuse > 0 ? previous.toOffsets[reuse] : 0;
+        for (int i = reuse; i < count; i++) {
+            edges += posts.get(i).getRepliesTo().length;
+        }
+
+        int[] toOffsets = new int[count + 1];
+        int[] toNos = new int[edges];
+        if (reuse > 0) {
+            System.arraycopy(previous.toOffsets, 0, toOffsets, 0, reuse + 1);
+            System.arraycopy(previous.toNos, 0, toNos, 0, toOffsets[reuse]);
+        }
+        for (int i = reuse; i < count; i++) {
+            int[] repliesTo = posts.get(i).getRepliesTo();
+            System.arraycopy(repliesTo, 0, toNos, toOffsets[i], repliesTo.length);
+            toOffsets[i + 1] = toOffsets[i] + repliesTo.length;
+        }
+
+        return new ReplyGraph(nos, toOffsets, toNos);
+    }
+
+    public int getRepliesFromCount(int no) {
+        int ordinal = ordinalOf(no);
+        return ordinal < 0 ? 0 : fromOffsets[ordinal + 1] - fromOffsets[ordinal];
+    }
+
+    /**
+     * The posts in the thread that quote the post, in thread order.
+     */
+    public int[] getRepliesFrom(int no) {
+        int ordinal = ordinalOf(no);
+        if (ordinal < 0 || fromOffsets[ordinal] == fromOffsets[ordinal + 1]) {
+            return EMPTY;
+        }
+        return Arrays.copyOfRange(fromNos, fromOffsets[ordinal], fromOffsets[ordinal + 1]);
+    }
+
+    /**
+     * The ordinal of the post, or -1 if it is not in the thread.
+     */
+    public int ordinalOf(int no) {
+        if (sortedNos == null) {
+            int index = Arrays.binarySearch(nos, no);
+            return index >= 0 ? index : -1;
+        } else {
+            int index = Arrays.binarySearch(sortedNos, no);
+            return index >= 0 ? sortedOrdinals[index] : -1;
+        }
+    }
+
+    private int commonPrefix(int[] otherNos) {
+        int length = Math.min(nos.length, otherNos.length);
+        int i = 0;
+        while (i < length && nos[i] == otherNos[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isAscending(int[] nos) {
+        for (int i = 1; i < nos.length; i++) {
+            if (nos[i] <= nos[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
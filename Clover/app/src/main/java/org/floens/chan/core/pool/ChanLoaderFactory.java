@@ -19,6 +19,8 @@ package org.floens.chan.core.pool;
 
 import android.util.LruCache;
 
+import org.floens.chan.core.database.DatabaseLoadableManager;
+import org.floens.chan.core.database.DatabaseManager;
 import org.floens.chan.core.model.orm.Loadable;
 import org.floens.chan.core.site.loader.ChanThreadLoader;
 
@@ -33,17 +35,29 @@ import javax.inject.Singleton;
  * <p>Each reference to a loader is a {@link ChanThreadLoader.ChanLoaderCallback}, these
  * references can be obtained with {@link #obtain(Loadable, ChanThreadLoader.ChanLoaderCallback)}} and released
  * with {@link #release(ChanThreadLoader, ChanThreadLoader.ChanLoaderCallback)}.
+ * <p>Loadables with an active or cached thread loader are marked in use, so that the
+ * {@link DatabaseLoadableManager} keeps them in its cache.
  */
 @Singleton
 public class ChanLoaderFactory {
     // private static final String TAG = "ChanLoaderFactory";
     public static final int THREAD_LOADERS_CACHE_SIZE = 25;
 
+    private final DatabaseLoadableManager databaseLoadableManager;
+
     private Map<Loadable, ChanThreadLoader> threadLoaders = new HashMap<>();
-    private LruCache<Loadable, ChanThreadLoader> threadLoadersCache = new LruCache<>(THREAD_LOADERS_CACHE_SIZE);
+    private LruCache<Loadable, ChanThreadLoader> threadLoadersCache = new LruCache<Loadable, ChanThreadLoader>(THREAD_LOADERS_CACHE_SIZE) {
+        @Override
+        protected void entryRemoved(boolean evicted, Loadable key, ChanThreadLoader oldValue, ChanThreadLoader newValue) {
+            if (evicted) {
+                databaseLoadableManager.setInUse(key, false);
+            }
+        }
+    };
 
     @Inject
-    public ChanLoaderFactory() {
+    public ChanLoaderFactory(DatabaseManager databaseManager) {
+        databaseLoadableManager = databaseManager.getDatabaseLoadableManager();
     }
 
     public ChanThreadLoader obtain(Loadable loadable, ChanThreadLoader.ChanLoaderCallback listener) {
@@ -65,6 +79,7 @@ public class ChanLoaderFactory {
             if (chanLoader == null) {
                 chanLoader = new ChanThreadLoader(loadable);
                 threadLoaders.put(loadable, chanLoader);
+                databaseLoadableManager.setInUse(loadable, true);
             }
         } else {
             chanLoader = new ChanThreadLoader(loadable);
@@ -256,14 +256,12 @@ public class ImageViewerPresenter implements MultiImageView.Callback, ViewPager.
             }
 
             if (load) {
-                final String fileUrl = next.imageUrl.toString();
-
                 // If downloading, remove from preloadingImages if it finished.
                 // Array to allow access from within the callback (the callback should really
                 // pass the filecachedownloader itself).
                 final FileCacheDownloader[] preloadDownload =
                         new FileCacheDownloader[1];
-                preloadDownload[0] = fileCache.downloadFile(fileUrl,
+                preloadDownload[0] = fileCache.downloadFile(next, FileCache.Priority.PRELOAD,
                         new FileCacheListener() {
                             @Override
                             public void onEnd() {
@@ -378,7 +376,7 @@ public class ImageViewerPresenter implements MultiImageView.Callback, ViewPager.
 
     private boolean imageAutoLoad(PostImage postImage) {
         // Auto load the image when it is cached
-        return fileCache.exists(postImage.imageUrl.toString()) || shouldLoadForNetworkType(ChanSettings.imageAutoLoadNetwork.get());
+        return fileCache.exists(postImage) || shouldLoadForNetworkType(ChanSettings.imageAutoLoadNetwork.get());
     }
 
     private boolean videoAutoLoad(PostImage postImage) {
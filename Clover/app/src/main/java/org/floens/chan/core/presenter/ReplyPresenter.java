@@ -328,7 +328,7 @@ public class ReplyPresenter implements AuthenticationLayoutCallback, ImagePickDe
     }
 
     public void quote(Post post, boolean withText) {
-        handleQuote(post, withText ? post.comment.toString() : null);
+        handleQuote(post, withText ? post.getComment().toString() : null);
     }
 
     public void quote(Post post, CharSequence text) {
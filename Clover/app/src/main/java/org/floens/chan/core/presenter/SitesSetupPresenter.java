@@ -18,6 +18,7 @@
 package org.floens.chan.core.presenter;
 
 import org.floens.chan.core.manager.BoardManager;
+import org.floens.chan.core.manager.FilterEngine;
 import org.floens.chan.core.repository.SiteRepository;
 import org.floens.chan.core.site.Site;
 import org.floens.chan.core.site.SiteService;
@@ -36,6 +37,7 @@ public class SitesSetupPresenter implements Observer {
     private final SiteService siteService;
     private final SiteRepository siteRepository;
     private final BoardManager boardManager;
+    private final FilterEngine filterEngine;
 
     private Callback callback;
     private AddCallback addCallback;
@@ -45,10 +47,11 @@ public class SitesSetupPresenter implements Observer {
 
     @Inject
     public SitesSetupPresenter(SiteService siteService, SiteRepository siteRepository,
-                               BoardManager boardManager) {
+                               BoardManager boardManager, FilterEngine filterEngine) {
         this.siteService = siteService;
         this.siteRepository = siteRepository;
         this.boardManager = boardManager;
+        this.filterEngine = filterEngine;
     }
 
     public void create(Callback callback) {
@@ -147,6 +150,8 @@ public class SitesSetupPresenter implements Observer {
     public void removeSite(Site site) {
         try {
             siteRepository.removeSite(site);
+            // The filters of the boards of the site were deleted with it.
+            filterEngine.reloadFilters();
             callback.onSiteDeleted(site);
         } catch (Throwable error) {
             Logger.e(TAG, "Could not delete site: " + site.name(), error);
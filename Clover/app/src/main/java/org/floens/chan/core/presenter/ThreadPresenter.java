@@ -45,6 +45,7 @@ import org.floens.chan.core.site.http.DeleteRequest;
 import org.floens.chan.core.site.http.DeleteResponse;
 import org.floens.chan.core.site.http.HttpCall;
 import org.floens.chan.core.site.loader.ChanThreadLoader;
+import org.floens.chan.core.site.parser.CommentParseQueue;
 import org.floens.chan.ui.adapter.PostAdapter;
 import org.floens.chan.ui.adapter.PostsFilter;
 import org.floens.chan.ui.cell.PostCellInterface;
@@ -57,7 +58,9 @@ import org.floens.chan.utils.AndroidUtils;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.inject.Inject;
 
@@ -97,6 +100,10 @@ public class ThreadPresenter implements
     private PostsFilter.Order order = PostsFilter.Order.BUMP;
     private boolean historyAdded;
 
+    // Threads that are being looked up in the database to open or pin, repeated taps are dropped.
+    private final Set<Loadable> pendingOpens = new HashSet<>();
+    private final Set<Loadable> pendingPins = new HashSet<>();
+
     @Inject
     public ThreadPresenter(WatchManager watchManager,
                            DatabaseManager databaseManager,
@@ -140,6 +147,8 @@ public class ThreadPresenter implements
         if (chanLoader != null) {
             chanLoader.clearTimer();
             chanLoaderFactory.release(chanLoader, this);
+            // The posts of a closed thread are only parsed again when they are shown.
+            CommentParseQueue.cancelPrefetch(loadable);
             chanLoader = null;
             loadable = null;
             historyAdded = false;
@@ -281,12 +290,9 @@ public class ThreadPresenter implements
             List<Post> posts = result.posts;
             int more = 0;
             if (lastLoaded > 0) {
-                for (int i = 0; i < posts.size(); i++) {
-                    Post post = posts.get(i);
-                    if (post.no == lastLoaded) {
-                        more = posts.size() - i - 1;
-                        break;
-                    }
+                int lastLoadedIndex = result.getPostIndex().indexOf(lastLoaded);
+                if (lastLoadedIndex >= 0) {
+                    more = posts.size() - lastLoadedIndex - 1;
                 }
             }
             loadable.setLastLoaded(posts.get(posts.size() - 1).no);
@@ -308,11 +314,30 @@ public class ThreadPresenter implements
         addHistory();
     }
 
+    @Override
+    public void onChanLoaderFiltered(ChanThread thread, List<Post> changed,
+                                     boolean removedChanged) {
+        if (removedChanged) {
+            showPosts();
+        } else {
+            threadPresenterCallback.updatePosts(changed);
+        }
+    }
+
     @Override
     public void onChanLoaderError(ChanLoaderException error) {
         threadPresenterCallback.showError(error);
     }
 
+    /**
+     * Apply changed filters to the loaded posts, without loading them again.
+     */
+    public void onFiltersChanged() {
+        if (isBound()) {
+            chanLoader.refilter();
+        }
+    }
+
     /*
      * PostAdapter callbacks
      */
@@ -371,15 +396,7 @@ public class ThreadPresenter implements
     }
 
     public void scrollToPost(Post needle, boolean smooth) {
-        int position = -1;
-        List<Post> posts = threadPresenterCallback.getDisplayingPosts();
-        for (int i = 0; i < posts.size(); i++) {
-            Post post = posts.get(i);
-            if (post.no == needle.no) {
-                position = i;
-                break;
-            }
-        }
+        int position = threadPresenterCallback.getDisplayPosition(needle.no);
         if (position >= 0) {
             scrollTo(position, smooth);
         }
@@ -416,9 +433,12 @@ public class ThreadPresenter implements
     @Override
     public void onPostClicked(Post post) {
         if (loadable.isCatalogMode()) {
-            Loadable threadLoadable = databaseManager.getDatabaseLoadableManager().get(Loadable.forThread(loadable.site, post.board, post.no));
-            threadLoadable.title = PostHelper.getTitle(post, loadable);
-            threadPresenterCallback.showThread(threadLoadable);
+            final String title = PostHelper.getTitle(post, loadable);
+            getThreadLoadable(pendingOpens,
+                    Loadable.forThread(loadable.site, post.board, post.no), threadLoadable -> {
+                        threadLoadable.title = title;
+                        threadPresenterCallback.showThread(threadLoadable);
+                    });
         } else {
             if (searchOpen) {
                 searchQuery = null;
@@ -523,11 +543,16 @@ public class ThreadPresenter implements
             case POST_OPTION_INFO:
                 showPostInfo(post);
                 break;
-            case POST_OPTION_LINKS:
-                if (post.linkables.size() > 0) {
-                    threadPresenterCallback.showPostLinkables(post);
-                }
+            case POST_OPTION_LINKS: {
+                // The links are only known once the comment is parsed, off the main thread.
+                Loadable linksLoadable = loadable;
+                CommentParseQueue.request(post, () -> {
+                    if (isBound() && loadable == linksLoadable && post.getLinkables().size() > 0) {
+                        threadPresenterCallback.showPostLinkables(post);
+                    }
+                });
                 break;
+            }
             case POST_OPTION_COPY_TEXT:
                 threadPresenterCallback.clipboardPost(post);
                 break;
@@ -549,19 +574,32 @@ public class ThreadPresenter implements
             case POST_OPTION_SAVE:
                 SavedReply savedReply = SavedReply.fromSiteBoardNoPassword(
                         post.board.site, post.board, post.no, "");
-                databaseManager.runTask(databaseManager.getDatabaseSavedReplyManager().saveReply(savedReply));
-                requestData();
+                databaseManager.runTaskAsync(databaseManager.getDatabaseSavedReplyManager().saveReply(savedReply),
+                        saved -> {
+                            if (isBound()) {
+                                requestData();
+                            }
+                        });
                 break;
-            case POST_OPTION_UNSAVE:
-                SavedReply result = databaseManager.runTask(databaseManager.getDatabaseSavedReplyManager().findSavedReply(post.board, post.no));
-                if (result != null) {
-                    databaseManager.runTask(databaseManager.getDatabaseSavedReplyManager().unsaveReply(result));
-                    requestData();
-                }
+            case POST_OPTION_UNSAVE: {
+                DatabaseSavedReplyManager savedReplyManager = databaseManager.getDatabaseSavedReplyManager();
+                databaseManager.runTaskAsync(() -> {
+                    SavedReply result = savedReplyManager.findSavedReply(post.board, post.no).call();
+                    if (result != null) {
+                        savedReplyManager.unsaveReply(result).call();
+                    }
+                    return result != null;
+                }, unsaved -> {
+                    if (unsaved && isBound()) {
+                        requestData();
+                    }
+                });
                 break;
+            }
             case POST_OPTION_PIN:
-                Loadable pinLoadable = databaseManager.getDatabaseLoadableManager().get(Loadable.forThread(loadable.site, post.board, post.no));
-                watchManager.createPin(pinLoadable, post);
+                getThreadLoadable(pendingPins,
+                        Loadable.forThread(loadable.site, post.board, post.no),
+                        pinLoadable -> watchManager.createPin(pinLoadable, post));
                 break;
             case POST_OPTION_OPEN_BROWSER: {
                 String url = loadable.site.resolvable().desktopUrl(loadable, post);
@@ -592,16 +630,38 @@ public class ThreadPresenter implements
 
             Board board = loadable.site.board(link.board);
             if (board != null) {
-                Loadable thread = databaseManager.getDatabaseLoadableManager().get(Loadable.forThread(board.site, board, link.threadId));
-                thread.markedNo = link.postId;
+                getThreadLoadable(pendingOpens,
+                        Loadable.forThread(board.site, board, link.threadId), thread -> {
+                            thread.markedNo = link.postId;
 
-                threadPresenterCallback.showThread(thread);
+                            threadPresenterCallback.showThread(thread);
+                        });
             }
         } else if (linkable.type == PostLinkable.Type.DEAD) {
             threadPresenterCallback.openArchiveForThreadLink((PostLinkable.ThreadLink) linkable.value);
         }
     }
 
+    /**
+     * Get the database loadable of a thread. The result is dropped when this presenter was
+     * unbound or bound to another loadable in the meantime, and when the same thread is already
+     * being looked up in {@code pending}.
+     */
+    private void getThreadLoadable(Set<Loadable> pending, Loadable threadLoadable,
+                                   DatabaseManager.TaskResult<Loadable> result) {
+        if (!pending.add(threadLoadable)) {
+            return;
+        }
+
+        final Loadable boundLoadable = loadable;
+        databaseManager.getDatabaseLoadableManager().getAsync(threadLoadable, found -> {
+            pending.remove(threadLoadable);
+            if (isBound() && loadable == boundLoadable) {
+                result.onComplete(found);
+            }
+        });
+    }
+
     @Override
     public void onPostNoClicked(Post post) {
         threadPresenterCallback.quote(post, false);
@@ -615,12 +675,10 @@ public class ThreadPresenter implements
     @Override
     public void onShowPostReplies(Post post) {
         List<Post> posts = new ArrayList<>();
-        synchronized (post.repliesFrom) {
-            for (int no : post.repliesFrom) {
-                Post replyPost = findPostById(no);
-                if (replyPost != null) {
-                    posts.add(replyPost);
-                }
+        for (int no : post.getRepliesFrom()) {
+            Post replyPost = findPostById(no);
+            if (replyPost != null) {
+                posts.add(replyPost);
             }
         }
         if (posts.size() > 0) {
@@ -687,14 +745,36 @@ public class ThreadPresenter implements
     public void deletePostConfirmed(Post post, boolean onlyImageDelete) {
         threadPresenterCallback.showDeleting();
 
-        SavedReply reply = databaseManager.runTask(
-                databaseManager.getDatabaseSavedReplyManager().findSavedReply(post.board, post.no)
-        );
-        if (reply != null) {
+        final Loadable boundLoadable = loadable;
+        databaseManager.runTaskAsync(
+                databaseManager.getDatabaseSavedReplyManager().findSavedReply(post.board, post.no),
+                reply -> {
+                    if (!isBound()) {
+                        return;
+                    }
+
+                    if (loadable != boundLoadable) {
+                        // The post is not of the bound thread anymore, don't delete it.
+                        threadPresenterCallback.hideDeleting(getString(R.string.delete_error));
+                        return;
+                    }
+
+                    deletePost(post, reply, onlyImageDelete);
+                });
+    }
+
+    private void deletePost(Post post, SavedReply reply, boolean onlyImageDelete) {
+        if (reply == null) {
+            threadPresenterCallback.hideDeleting(getString(R.string.delete_error));
+        } else {
             Site site = loadable.getSite();
             site.actions().delete(new DeleteRequest(post, reply, onlyImageDelete), new SiteActions.DeleteListener() {
                 @Override
                 public void onDeleteComplete(HttpCall httpPost, DeleteResponse deleteResponse) {
+                    if (!isBound()) {
+                        return;
+                    }
+
                     String message;
                     if (deleteResponse.deleted) {
                         message = getString(R.string.delete_success);
@@ -708,6 +788,10 @@ public class ThreadPresenter implements
 
                 @Override
                 public void onDeleteError(HttpCall httpCall) {
+                    if (!isBound()) {
+                        return;
+                    }
+
                     threadPresenterCallback.hideDeleting(getString(R.string.delete_error));
                 }
             });
@@ -715,12 +799,14 @@ public class ThreadPresenter implements
     }
 
     private void requestDeletePost(Post post) {
-        SavedReply reply = databaseManager.runTask(
-                databaseManager.getDatabaseSavedReplyManager().findSavedReply(post.board, post.no)
-        );
-        if (reply != null) {
-            threadPresenterCallback.confirmPostDelete(post);
-        }
+        final Loadable boundLoadable = loadable;
+        databaseManager.runTaskAsync(
+                databaseManager.getDatabaseSavedReplyManager().findSavedReply(post.board, post.no),
+                reply -> {
+                    if (reply != null && isBound() && loadable == boundLoadable) {
+                        threadPresenterCallback.confirmPostDelete(post);
+                    }
+                });
     }
 
     private void showPostInfo(Post post) {
@@ -774,14 +860,7 @@ public class ThreadPresenter implements
 
     private Post findPostById(int id) {
         ChanThread thread = chanLoader.getThread();
-        if (thread != null) {
-            for (Post post : thread.posts) {
-                if (post.no == id) {
-                    return post;
-                }
-            }
-        }
-        return null;
+        return thread == null ? null : thread.findPostByNo(id);
     }
 
     private void showPosts() {
@@ -806,6 +885,11 @@ public class ThreadPresenter implements
     public interface ThreadPresenterCallback {
         void showPosts(ChanThread thread, PostsFilter filter);
 
+        /**
+         * Bind the posts again, they are already shown.
+         */
+        void updatePosts(List<Post> posts);
+
         void postClicked(Post post);
 
         void showError(ChanLoaderException error);
@@ -832,6 +916,11 @@ public class ThreadPresenter implements
 
         List<Post> getDisplayingPosts();
 
+        /**
+         * The position of the post in {@link #getDisplayingPosts()}, or -1.
+         */
+        int getDisplayPosition(int postNo);
+
         int[] getCurrentPosition();
 
         void showImages(List<PostImage> images, int index, Loadable loadable, ThumbnailView thumbnail);
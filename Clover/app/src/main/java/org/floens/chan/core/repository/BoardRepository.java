@@ -71,11 +71,13 @@ public class BoardRepository implements Observer {
     }
 
     public void updateAvailableBoardsForSite(Site site, List<Board> availableBoards) {
-        boolean changed = databaseManager.runTask(databaseBoardManager.createAll(site, availableBoards));
-        Logger.d(TAG, "updateAvailableBoardsForSite changed = " + changed);
-        if (changed) {
-            updateObservablesAsync();
-        }
+        databaseManager.runTaskAsync(databaseBoardManager.createAll(site, availableBoards),
+                changed -> {
+                    Logger.d(TAG, "updateAvailableBoardsForSite changed = " + changed);
+                    if (changed) {
+                        updateObservablesAsync();
+                    }
+                });
     }
 
     public Board getFromCode(Site site, String code) {
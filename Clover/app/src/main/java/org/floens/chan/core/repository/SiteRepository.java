@@ -5,6 +5,7 @@ import android.util.Pair;
 import android.util.SparseArray;
 
 import org.floens.chan.core.database.DatabaseManager;
+import org.floens.chan.core.database.DatabaseSiteManager;
 import org.floens.chan.core.model.json.site.SiteConfig;
 import org.floens.chan.core.model.orm.Filter;
 import org.floens.chan.core.model.orm.Loadable;
@@ -19,6 +20,7 @@ import org.floens.chan.utils.Logger;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
@@ -36,6 +38,9 @@ public class SiteRepository {
 
     private Sites sitesObservable = new Sites();
 
+    // Site id to order, the same as in the database, so that sorting does not wait on it.
+    private final Map<Integer, Integer> ordering = new HashMap<>();
+
     // Shortcut
     private static SiteRepository instance;
 
@@ -69,14 +74,26 @@ public class SiteRepository {
                 .update(siteModel));
     }
 
+    public void updateSiteUserSettingsAsync(Site site, JsonSettings jsonSettings) {
+        DatabaseSiteManager databaseSiteManager = databaseManager.getDatabaseSiteManager();
+        databaseManager.runTaskAsync(() -> {
+            SiteModel siteModel = databaseSiteManager.byId(site.id()).call();
+            if (siteModel == null) throw new NullPointerException("siteModel == null");
+            siteModel.storeUserSettings(jsonSettings);
+            return databaseSiteManager.update(siteModel).call();
+        });
+    }
+
     public Map<Integer, Integer> getOrdering() {
-        return databaseManager.runTask(databaseManager.getDatabaseSiteManager().getOrdering());
+        return new HashMap<>(ordering);
     }
 
     public void updateSiteOrderingAsync(List<Site> sites) {
         List<Integer> ids = new ArrayList<>(sites.size());
-        for (Site site : sites) {
-            ids.add(site.id());
+        for (int i = 0; i < sites.size(); i++) {
+            int id = sites.get(i).id();
+            ids.add(id);
+            ordering.put(id, i);
         }
 
         databaseManager.runTaskAsync(
@@ -93,6 +110,11 @@ public class SiteRepository {
         List<SiteModel> models = databaseManager.runTask(
                 databaseManager.getDatabaseSiteManager().getAll());
 
+        ordering.clear();
+        for (SiteModel siteModel : models) {
+            ordering.put(siteModel.id, siteModel.order);
+        }
+
         for (SiteModel siteModel : models) {
             SiteConfigSettingsHolder holder;
             try {
@@ -143,6 +165,7 @@ public class SiteRepository {
         config.external = false;
 
         SiteModel model = createFromClass(config, settings);
+        ordering.put(model.id, model.order);
 
         site.initialize(model.id, config, settings);
 
@@ -214,6 +237,7 @@ public class SiteRepository {
             databaseManager.getDatabaseSiteManager().deleteSite(site).call();
             return null;
         });
+        ordering.remove(site.id());
     }
 
     private void removeThreadHides(Site site) throws Exception {
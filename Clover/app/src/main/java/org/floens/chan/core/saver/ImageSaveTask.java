@@ -123,7 +123,7 @@ public class ImageSaveTask extends FileCacheListener implements Runnable {
                 postFinished(success);
             } else {
                 FileCacheDownloader fileCacheDownloader =
-                        fileCache.downloadFile(postImage.imageUrl.toString(), this);
+                        fileCache.downloadFile(postImage, FileCache.Priority.BULK, this);
 
                 // If the fileCacheDownloader is null then the destination already existed and onSuccess() has been called.
                 // Wait otherwise for the download to finish to avoid that the next task is immediately executed.
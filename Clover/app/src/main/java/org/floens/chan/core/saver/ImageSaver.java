@@ -46,7 +46,9 @@ import org.floens.chan.utils.AndroidUtils;
 
 import java.io.File;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -88,7 +90,7 @@ public class ImageSaver implements ImageSaveTask.ImageSaveTaskCallback {
     }
 
     public void share(PostImage postImage) {
-        fileCache.downloadFile(postImage.imageUrl.toString(), new FileCacheListener() {
+        fileCache.downloadFile(postImage, new FileCacheListener() {
             @Override
             public void onSuccess(File file) {
                 shareFileCacheImage(postImage, file);
@@ -136,8 +138,15 @@ public class ImageSaver implements ImageSaveTask.ImageSaveTaskCallback {
     private void queueTasks(final List<ImageSaveTask> tasks, final String[] folders) {
         totalTasks = 0;
 
+        // The same file posted multiple times in a thread is only saved once.
+        Set<String> queuedMd5s = new HashSet<>();
+
         for (ImageSaveTask task : tasks) {
             PostImage postImage = task.getPostImage();
+            if (postImage.md5 != null && !queuedMd5s.add(postImage.md5)) {
+                continue;
+            }
+
             String name = ChanSettings.saveOriginalFilename.get() ? postImage.originalName : postImage.filename;
 
             StorageFile file;
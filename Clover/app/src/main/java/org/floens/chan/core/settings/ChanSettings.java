@@ -156,6 +156,7 @@ public class ChanSettings {
     public static final BooleanSetting anonymize;
     public static final BooleanSetting anonymizeIds;
     public static final BooleanSetting showAnonymousName;
+    public static final BooleanSetting lazyCommentParsing;
     public static final BooleanSetting revealImageSpoilers;
     public static final BooleanSetting revealTextSpoilers;
     public static final BooleanSetting repliesButtonsBottom;
@@ -170,6 +171,8 @@ public class ChanSettings {
 
     public static final BooleanSetting videoDefaultMuted;
     public static final BooleanSetting videoAutoLoop;
+    public static final IntegerSetting segmentedDownloadMinSizeKb;
+    public static final BooleanSetting http2Downloads;
 
     public static final BooleanSetting watchEnabled;
     public static final BooleanSetting watchCountdown;
@@ -246,6 +249,7 @@ public class ChanSettings {
         anonymize = new BooleanSetting(p, "preference_anonymize", false);
         anonymizeIds = new BooleanSetting(p, "preference_anonymize_ids", false);
         showAnonymousName = new BooleanSetting(p, "preference_show_anonymous_name", false);
+        lazyCommentParsing = new BooleanSetting(p, "preference_lazy_comment_parsing", true);
         revealImageSpoilers = new BooleanSetting(p, "preference_reveal_image_spoilers", false);
         revealTextSpoilers = new BooleanSetting(p, "preference_reveal_text_spoilers", false);
         repliesButtonsBottom = new BooleanSetting(p, "preference_buttons_bottom", true);
@@ -260,6 +264,8 @@ public class ChanSettings {
 //        saveBoardFolder = new BooleanSetting(p, "preference_save_subboard", false);
         videoDefaultMuted = new BooleanSetting(p, "preference_video_default_muted", true);
         videoAutoLoop = new BooleanSetting(p, "preference_video_loop", true);
+        segmentedDownloadMinSizeKb = new IntegerSetting(p, "preference_segmented_download_min_size_kb", 2048);
+        http2Downloads = new BooleanSetting(p, "preference_http2_downloads", false);
 
         watchEnabled = new BooleanSetting(p, "preference_watch_enabled", false);
         watchEnabled.addCallback((setting, value) ->
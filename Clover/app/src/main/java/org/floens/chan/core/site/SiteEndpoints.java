@@ -35,6 +35,16 @@ public interface SiteEndpoints {
 
     HttpUrl thread(Board board, Loadable loadable);
 
+    /**
+     * Only the op and the last posts of the thread, in the same format as {@link #thread}. The op
+     * has a {@code tail_id} when posts were left out.
+     *
+     * @return the url, or {@code null} if the site does not support it.
+     */
+    default HttpUrl threadTail(Board board, Loadable loadable) {
+        return null;
+    }
+
     HttpUrl imageUrl(Post.Builder post, Map<String, String> arg);
 
     HttpUrl thumbnailUrl(Post.Builder post, boolean spoiler, Map<String, String> arg);
@@ -18,7 +18,6 @@
 package org.floens.chan.core.site;
 
 
-import org.floens.chan.core.model.orm.SiteModel;
 import org.floens.chan.core.repository.SiteRepository;
 import org.floens.chan.core.settings.json.JsonSettings;
 
@@ -79,9 +78,7 @@ public class SiteService {
     }
 
     public void updateUserSettings(Site site, JsonSettings jsonSettings) {
-        SiteModel siteModel = siteRepository.byId(site.id());
-        if (siteModel == null) throw new NullPointerException("siteModel == null");
-        siteRepository.updateSiteUserSettingsAsync(siteModel, jsonSettings);
+        siteRepository.updateSiteUserSettingsAsync(site, jsonSettings);
     }
 
     public void updateOrdering(List<Site> sitesInNewOrder) {
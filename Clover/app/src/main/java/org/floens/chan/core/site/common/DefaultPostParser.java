@@ -25,11 +25,14 @@ import android.text.TextUtils;
 import android.text.style.BackgroundColorSpan;
 
 import androidx.annotation.AnyThread;
+import androidx.annotation.VisibleForTesting;
 
 import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.PostLinkable;
 import org.floens.chan.core.settings.ChanSettings;
 import org.floens.chan.core.site.parser.CommentParser;
 import org.floens.chan.core.site.parser.CommentParserHelper;
+import org.floens.chan.core.site.parser.CommentTokenizer;
 import org.floens.chan.core.site.parser.PostParser;
 import org.floens.chan.ui.span.AbsoluteSizeSpanHashed;
 import org.floens.chan.ui.span.ForegroundColorSpanHashed;
@@ -45,19 +48,67 @@ import org.jsoup.parser.Parser;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 @AnyThread
 public class DefaultPostParser implements PostParser {
     private static final String TAG = "DefaultPostParser";
 
+    private static final Pattern BREAK_PATTERN = Pattern.compile("<br\\s*/?>");
+    private static final Pattern TAG_PATTERN = Pattern.compile("<[^>]*>");
+
     private CommentParser commentParser;
+    private CommentTokenizer commentTokenizer;
 
     public DefaultPostParser(CommentParser commentParser) {
         this.commentParser = commentParser;
+        commentTokenizer = new CommentTokenizer(commentParser);
     }
 
     @Override
     public Post parse(Theme theme, Post.Builder builder, Callback callback) {
+        theme = parseHeader(theme, builder);
+
+        if (builder.comment != null) {
+            builder.comment = parseComment(theme, builder, builder.comment, callback);
+        } else {
+            builder.comment = "";
+        }
+
+        return builder.build();
+    }
+
+    @Override
+    public Post parseDeferred(Theme theme, Post.Builder builder, Callback callback) {
+        theme = parseHeader(theme, builder);
+
+        if (builder.comment == null) {
+            builder.comment = "";
+            return builder.build();
+        }
+
+        final Theme finalTheme = theme;
+        final String commentRaw = builder.comment.toString();
+
+        commentParser.extractReplies(callback, builder, commentRaw);
+
+        builder.comment = plainText(commentRaw);
+        builder.deferComment(new Post.DeferredComment() {
+            @Override
+            public CharSequence parse() {
+                return parseComment(finalTheme, builder, commentRaw, callback);
+            }
+
+            @Override
+            public List<PostLinkable> getLinkables() {
+                return builder.getLinkables();
+            }
+        });
+
+        return builder.build();
+    }
+
+    private Theme parseHeader(Theme theme, Post.Builder builder) {
         if (theme == null) {
             theme = ThemeHelper.getInstance().getTheme();
         }
@@ -72,13 +123,17 @@ public class DefaultPostParser implements PostParser {
 
         parseSpans(theme, builder);
 
-        if (builder.comment != null) {
-            builder.comment = parseComment(theme, builder, builder.comment, callback);
-        } else {
-            builder.comment = "";
-        }
+        return theme;
+    }
 
-        return builder.build();
+    /**
+     * The text of the comment without markup, shown until the rich comment is parsed.
+     */
+    private String plainText(String commentRaw) {
+        String text = commentRaw.replace("<wbr>", "");
+        text = BREAK_PATTERN.matcher(text).replaceAll("\n");
+        text = TAG_PATTERN.matcher(text).replaceAll("");
+        return Parser.unescapeEntities(text, false);
     }
 
     /**
@@ -113,10 +168,9 @@ public class DefaultPostParser implements PostParser {
 
         if (!TextUtils.isEmpty(builder.subject)) {
             subjectSpan = new SpannableString(builder.subject);
-            // Do not set another color when the post is in stub mode, it sets text_color_secondary
-            if (!builder.filterStub) {
-                subjectSpan.setSpan(new ForegroundColorSpanHashed(theme.subjectColor), 0, subjectSpan.length(), 0);
-            }
+            // Also when the post is a stub, a refilter can change that. The stub cell shows the
+            // plain subject in text_color_secondary.
+            subjectSpan.setSpan(new ForegroundColorSpanHashed(theme.subjectColor), 0, subjectSpan.length(), 0);
         }
 
         if (!TextUtils.isEmpty(builder.name) && (!builder.name.equals(defaultName) || ChanSettings.showAnonymousName.get())) {
@@ -177,6 +231,29 @@ public class DefaultPostParser implements PostParser {
     }
 
     private CharSequence parseComment(Theme theme, Post.Builder post, CharSequence commentRaw, Callback callback) {
+        List<PostLinkable> linkables = post.getLinkables();
+        int linkableCount = linkables.size();
+        try {
+            // Most comments only have simple markup, the tokenizer skips building a document.
+            CharSequence tokenized = commentTokenizer.parse(theme, post, commentRaw.toString(), callback);
+            if (tokenized != null) {
+                return tokenized;
+            }
+        } catch (Exception e) {
+            Logger.e(TAG, "Error tokenizing comment html, parsing it with Jsoup", e);
+            // Drop the linkables of the rules that ran before it failed, Jsoup adds them again.
+            linkables.subList(linkableCount, linkables.size()).clear();
+        }
+
+        return parseCommentWithJsoup(theme, post, commentRaw, callback);
+    }
+
+    /**
+     * Parse the comment from a Jsoup document. Used for the markup the {@link CommentTokenizer}
+     * does not handle, the tokenizer must give the same result as this for all other markup.
+     */
+    @VisibleForTesting
+    CharSequence parseCommentWithJsoup(Theme theme, Post.Builder post, CharSequence commentRaw, Callback callback) {
         CharSequence total = new SpannableString("");
 
         try {
@@ -103,6 +103,7 @@ public class FutabaChanReader implements ChanReader {
         long fileSize = 0;
         boolean fileSpoiler = false;
         String fileName = null;
+        String fileMd5 = null;
 
         List<PostImage> files = new ArrayList<>();
 
@@ -155,6 +156,9 @@ public class FutabaChanReader implements ChanReader {
                 case "filename":
                     fileName = reader.nextString();
                     break;
+                case "md5":
+                    fileMd5 = reader.nextString();
+                    break;
                 case "trip":
                     builder.tripcode(reader.nextString());
                     break;
@@ -197,6 +201,9 @@ public class FutabaChanReader implements ChanReader {
                 case "last_modified":
                     builder.lastModified(reader.nextLong());
                     break;
+                case "tail_id":
+                    queue.setTailId(reader.nextInt());
+                    break;
                 case "id":
                     builder.posterId(reader.nextString());
                     break;
@@ -241,6 +248,7 @@ public class FutabaChanReader implements ChanReader {
                     .imageHeight(fileHeight)
                     .spoiler(fileSpoiler)
                     .size(fileSize)
+                    .md5(fileMd5)
                     .build();
             // Insert it at the beginning.
             files.add(0, image);
@@ -301,6 +309,7 @@ public class FutabaChanReader implements ChanReader {
         int fileHeight = 0;
         boolean fileSpoiler = false;
         String fileName = null;
+        String fileMd5 = null;
 
         while (reader.hasNext()) {
             switch (reader.nextName()) {
@@ -325,6 +334,9 @@ public class FutabaChanReader implements ChanReader {
                 case "filename":
                     fileName = reader.nextString();
                     break;
+                case "md5":
+                    fileMd5 = reader.nextString();
+                    break;
                 default:
                     reader.skipValue();
                     break;
@@ -347,6 +359,7 @@ public class FutabaChanReader implements ChanReader {
                     .imageHeight(fileHeight)
                     .spoiler(fileSpoiler)
                     .size(fileSize)
+                    .md5(fileMd5)
                     .build();
         }
         return null;
@@ -18,16 +18,16 @@
 package org.floens.chan.core.site.loader;
 
 
-import com.android.volley.Request;
+import org.floens.chan.core.site.parser.ChanReaderRequest;
 
 public class ChanLoaderRequest {
-    private Request<ChanLoaderResponse> volleyRequest;
+    private ChanReaderRequest readerRequest;
 
-    public ChanLoaderRequest(Request<ChanLoaderResponse> volleyRequest) {
-        this.volleyRequest = volleyRequest;
+    public ChanLoaderRequest(ChanReaderRequest readerRequest) {
+        this.readerRequest = readerRequest;
     }
 
-    public Request<ChanLoaderResponse> getVolleyRequest() {
-        return volleyRequest;
+    public void cancel() {
+        readerRequest.cancel();
     }
 }
@@ -22,6 +22,7 @@ import com.android.volley.Response;
 
 import org.floens.chan.core.model.Post;
 import org.floens.chan.core.model.orm.Loadable;
+import org.floens.chan.core.site.SiteEndpoints;
 import org.floens.chan.core.site.parser.ChanReader;
 
 import java.util.List;
@@ -42,6 +43,17 @@ public class ChanLoaderRequestParams {
      */
     public final List<Post> cached;
 
+    /**
+     * Last-Modified of the previous response to send as If-Modified-Since, or null to always
+     * get the full response.
+     */
+    public final String ifModifiedSince;
+
+    /**
+     * Request only the last posts of the thread, see {@link SiteEndpoints#threadTail}.
+     */
+    public final boolean tail;
+
     /**
      * Success listener.
      */
@@ -55,12 +67,16 @@ public class ChanLoaderRequestParams {
     public ChanLoaderRequestParams(Loadable loadable,
                                    ChanReader chanReader,
                                    List<Post> cached,
+                                   String ifModifiedSince,
+                                   boolean tail,
                                    Response.Listener<ChanLoaderResponse> listener,
                                    Response.ErrorListener errorListener) {
 
         this.loadable = loadable;
         this.chanReader = chanReader;
         this.cached = cached;
+        this.ifModifiedSince = ifModifiedSince;
+        this.tail = tail;
         this.listener = listener;
         this.errorListener = errorListener;
     }
@@ -17,9 +17,12 @@
  */
 package org.floens.chan.core.site.loader;
 
+import org.floens.chan.core.manager.CompiledFilters;
 import org.floens.chan.core.model.Post;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 public class ChanLoaderResponse {
     // Op Post that is created new each time.
@@ -27,8 +30,60 @@ public class ChanLoaderResponse {
     public final Post.Builder op;
     public final List<Post> posts;
 
-    public ChanLoaderResponse(Post.Builder op, List<Post> posts) {
+    /**
+     * The server answered 304 Not Modified, {@link #op} is null and {@link #posts} is empty.
+     */
+    public final boolean notModified;
+
+    /**
+     * The Last-Modified header of the response, or null. Sent back as If-Modified-Since on the
+     * next request.
+     */
+    public final String lastModified;
+
+    /**
+     * A tail response did not overlap with the cached posts, posts in between would be missing.
+     * The thread needs to be loaded in full, {@link #op} is null and {@link #posts} is empty.
+     */
+    public final boolean tailMismatch;
+
+    /**
+     * The filters that the new posts were filtered with. The cached posts that were reused keep
+     * the filter outcome they had.
+     */
+    public final CompiledFilters filters;
+
+    /**
+     * The comment html of the posts that were parsed for this response, by post number. The
+     * loader keeps it for refiltering and the thread snapshot, the posts only have the parsed
+     * comment.
+     */
+    public final Map<Integer, String> rawComments;
+
+    public ChanLoaderResponse(Post.Builder op, List<Post> posts, String lastModified,
+                              CompiledFilters filters, Map<Integer, String> rawComments) {
+        this(op, posts, false, false, lastModified, filters, rawComments);
+    }
+
+    private ChanLoaderResponse(Post.Builder op, List<Post> posts, boolean notModified,
+                               boolean tailMismatch, String lastModified,
+                               CompiledFilters filters, Map<Integer, String> rawComments) {
         this.op = op;
         this.posts = posts;
+        this.notModified = notModified;
+        this.tailMismatch = tailMismatch;
+        this.lastModified = lastModified;
+        this.filters = filters;
+        this.rawComments = rawComments;
+    }
+
+    public static ChanLoaderResponse notModified(String lastModified) {
+        return new ChanLoaderResponse(null, Collections.<Post>emptyList(), true, false,
+                lastModified, null, Collections.<Integer, String>emptyMap());
+    }
+
+    public static ChanLoaderResponse tailMismatch(String lastModified) {
+        return new ChanLoaderResponse(null, Collections.<Post>emptyList(), false, true,
+                lastModified, null, Collections.<Integer, String>emptyMap());
     }
 }
@@ -21,23 +21,29 @@ import static org.floens.chan.Chan.inject;
 
 import android.text.TextUtils;
 
-import com.android.volley.RequestQueue;
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
 
 import org.floens.chan.core.exception.ChanLoaderException;
+import org.floens.chan.core.manager.CompiledFilters;
+import org.floens.chan.core.manager.FilterEngine;
 import org.floens.chan.core.model.ChanThread;
 import org.floens.chan.core.model.Post;
 import org.floens.chan.core.model.orm.Loadable;
 import org.floens.chan.core.site.parser.ChanReader;
 import org.floens.chan.core.site.parser.ChanReaderRequest;
+import org.floens.chan.core.site.parser.CommentParseQueue;
 import org.floens.chan.ui.helper.PostHelper;
 import org.floens.chan.utils.AndroidUtils;
 import org.floens.chan.utils.Logger;
 import org.floens.chan.utils.Time;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -58,8 +64,16 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
 
     private static final int[] WATCH_TIMEOUTS = {10, 15, 20, 30, 60, 90, 120, 180, 240, 300, 600, 1800, 3600};
 
+    // Threads with this many posts are refreshed with only the tail of the thread.
+    private static final int TAIL_MIN_POSTS = 100;
+    // Load the full thread after this many tail loads, to check the older posts for deletion.
+    private static final int TAIL_FULL_LOAD_INTERVAL = 5;
+
+    @Inject
+    ThreadSnapshotStore snapshotStore;
+
     @Inject
-    RequestQueue volleyRequestQueue;
+    FilterEngine filterEngine;
 
     private final List<ChanLoaderCallback> listeners = new ArrayList<>();
     private final Loadable loadable;
@@ -70,16 +84,29 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
     private int currentTimeout = 0;
     private int lastPostCount;
     private long lastLoadTime;
+    // Last-Modified of the response that the current thread was built from.
+    private String lastModified;
+    private int tailLoads;
     private ScheduledFuture<?> pendingFuture;
 
+    // The filters that the outcome of all posts in the thread is from, null if it is mixed.
+    private CompiledFilters threadFilters;
+    // The filters of the running refilter, see refilter().
+    private CompiledFilters refilteringWith;
+    // Changed every time the posts of the thread are replaced.
+    private int postsVersion;
+    // The comment html of the posts in the thread by post number, for refiltering and the
+    // snapshot. See ChanLoaderResponse#rawComments.
+    private final Map<Integer, String> rawComments = new HashMap<>();
+
     /**
      * <b>Do not call this constructor yourself, obtain ChanLoaders through {@link org.floens.chan.core.pool.ChanLoaderFactory}</b>
      */
     public ChanThreadLoader(Loadable loadable) {
-        this.loadable = loadable;
-
         inject(this);
 
+        this.loadable = loadable;
+
         if (loadable.mode == Loadable.Mode.BOARD) {
             loadable.mode = Loadable.Mode.CATALOG;
         }
@@ -105,7 +132,7 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
         if (listeners.isEmpty()) {
             clearTimer();
             if (request != null) {
-                request.getVolleyRequest().cancel();
+                request.cancel();
                 request = null;
             }
             return true;
@@ -119,13 +146,16 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
     }
 
     /**
-     * Request data for the first time.
+     * Request data for the first time, or load the thread again from scratch. The stored
+     * snapshot is only shown when nothing of the thread was shown yet.
      */
     public void requestData() {
+        boolean firstOpen = thread == null;
+
         clearTimer();
 
         if (request != null) {
-            request.getVolleyRequest().cancel();
+            request.cancel();
             // request = null;
         }
 
@@ -137,8 +167,19 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
 
         currentTimeout = -1;
         thread = null;
-
-        request = getData();
+        threadFilters = null;
+        refilteringWith = null;
+        lastModified = null;
+        tailLoads = 0;
+        rawComments.clear();
+
+        if (loadable.isThreadMode() && firstOpen) {
+            // Show the stored snapshot first, the thread is loaded again after that. Not on a
+            // reload, that would show older posts than the ones that were shown.
+            request = getSnapshot();
+        } else {
+            request = getData();
+        }
     }
 
     /**
@@ -236,33 +277,106 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
         Logger.d(TAG, "Requested " + loadable.boardCode + ", " + loadable.no);
 
         List<Post> cached = thread == null ? new ArrayList<Post>() : thread.posts;
+        // Only conditional when there is a thread to fall back on for a 304.
+        String ifModifiedSince = thread == null ? null : lastModified;
+
+        boolean tail = shouldLoadTail();
+        if (tail) {
+            tailLoads++;
+        } else {
+            tailLoads = 0;
+        }
 
         ChanReader chanReader = loadable.getSite().chanReader();
 
-        ChanLoaderRequestParams requestParams = new ChanLoaderRequestParams(loadable, chanReader, cached, this, this);
+        ChanLoaderRequestParams requestParams = new ChanLoaderRequestParams(
+                loadable, chanReader, cached, ifModifiedSince, tail, this, this);
         ChanReaderRequest readerRequest = new ChanReaderRequest(requestParams);
         request = new ChanLoaderRequest(readerRequest);
 
-        volleyRequestQueue.add(request.getVolleyRequest());
+        readerRequest.execute();
 
         return request;
     }
 
+    private ChanLoaderRequest getSnapshot() {
+        ChanLoaderRequestParams requestParams = new ChanLoaderRequestParams(
+                loadable, loadable.getSite().chanReader(), new ArrayList<Post>(), null, false,
+                this::onSnapshotResponse, this::onSnapshotError);
+        ChanReaderRequest readerRequest = new ChanReaderRequest(requestParams);
+        ChanLoaderRequest snapshotRequest = new ChanLoaderRequest(readerRequest);
+
+        readerRequest.executeSnapshot(snapshotStore, executor);
+
+        return snapshotRequest;
+    }
+
+    private void onSnapshotResponse(ChanLoaderResponse response) {
+        if (response.posts.isEmpty()) {
+            onSnapshotError(null);
+            return;
+        }
+
+        Logger.d(TAG, "Showing snapshot of " + loadable.boardCode + ", " + loadable.no);
+        setPosts(response);
+
+        // Revalidate with the snapshot posts as the cached posts, a 304 keeps them.
+        request = getData();
+
+        onDataLoaded();
+    }
+
+    private void onSnapshotError(VolleyError error) {
+        request = getData();
+    }
+
     @Override
     public void onResponse(ChanLoaderResponse response) {
         request = null;
 
+        if (response.notModified) {
+            if (thread == null) {
+                onErrorResponse(new VolleyError("Not modified without a loaded thread"));
+                return;
+            }
+
+            Logger.d(TAG, "Not modified " + loadable.boardCode + ", " + loadable.no);
+            lastModified = response.lastModified;
+            onDataLoaded();
+            return;
+        }
+
+        if (response.tailMismatch) {
+            Logger.d(TAG, "Tail did not overlap, loading the full thread");
+            tailLoads = TAIL_FULL_LOAD_INTERVAL;
+            request = getData();
+            return;
+        }
+
         if (response.posts.isEmpty()) {
             onErrorResponse(new VolleyError("Post size is 0"));
             return;
         }
 
+        setPosts(response);
+
+        snapshotStore.save(loadable, thread, rawComments, lastModified);
+
+        onDataLoaded();
+    }
+
+    private void setPosts(ChanLoaderResponse response) {
         if (thread == null) {
             thread = new ChanThread(loadable, new ArrayList<Post>());
+            threadFilters = response.filters;
+        } else if (threadFilters != response.filters) {
+            // The reused posts were filtered with other filters, refilter() fixes it up.
+            threadFilters = null;
         }
 
-        thread.posts.clear();
-        thread.posts.addAll(response.posts);
+        thread.setPosts(response.posts);
+        postsVersion++;
+        updateRawComments(response);
 
         processResponse(response);
 
@@ -274,6 +388,32 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
             post.setTitle(loadable.title);
         }
 
+        // Visible posts are parsed first when they are bound, the rest after that.
+        CommentParseQueue.prefetch(loadable, thread.posts);
+
+        lastModified = response.lastModified;
+    }
+
+    private void updateRawComments(ChanLoaderResponse response) {
+        Set<Integer> nos = new HashSet<>(thread.posts.size());
+        for (int i = 0; i < thread.posts.size(); i++) {
+            int no = thread.posts.get(i).no;
+            nos.add(no);
+
+            // A reused post keeps the html it was parsed from.
+            if (!rawComments.containsKey(no)) {
+                String rawComment = response.rawComments.get(no);
+                rawComments.put(no, rawComment == null ? "" : rawComment);
+            }
+        }
+        rawComments.keySet().retainAll(nos);
+    }
+
+    /**
+     * Update the watch timer and notify the listeners, after new data or a 304 response. The
+     * timer backs off when no new posts came in.
+     */
+    private void onDataLoaded() {
         lastLoadTime = Time.get();
 
         int postCount = thread.posts.size();
@@ -287,6 +427,103 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
         for (ChanLoaderCallback l : listeners) {
             l.onChanLoaderData(thread);
         }
+
+        // Also catches filter changes made while this loader was cached without listeners.
+        refilter();
+    }
+
+    /**
+     * Apply the current filters to the loaded posts if they changed since the posts were
+     * filtered, without loading the thread again. The posts are matched on a background thread,
+     * the listeners get the posts of which the outcome changed with
+     * {@link ChanLoaderCallback#onChanLoaderFiltered(ChanThread, List, boolean)}.
+     */
+    public void refilter() {
+        if (thread == null) {
+            return;
+        }
+
+        final CompiledFilters filters = filterEngine.compileFilters(
+                filterEngine.getFilterSnapshot().getFilters(loadable.board));
+        if (filters == threadFilters || filters == refilteringWith) {
+            return;
+        }
+
+        refilteringWith = filters;
+        final ChanThread refilterThread = thread;
+        final int refilterVersion = postsVersion;
+        final List<Post> posts = new ArrayList<>(thread.posts);
+        final List<String> comments = new ArrayList<>(posts.size());
+        for (int i = 0; i < posts.size(); i++) {
+            comments.add(rawComments.get(posts.get(i).no));
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final CompiledFilters.Result[] results = new CompiledFilters.Result[posts.size()];
+                for (int i = 0; i < posts.size(); i++) {
+                    results[i] = filters.filter(posts.get(i), comments.get(i));
+                }
+
+                AndroidUtils.runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        onRefiltered(refilterThread, refilterVersion, filters, posts, results);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onRefiltered(ChanThread refilterThread, int refilterVersion,
+                              CompiledFilters filters, List<Post> posts,
+                              CompiledFilters.Result[] results) {
+        if (refilteringWith != filters) {
+            // Reloaded from scratch, or another refilter started.
+            return;
+        }
+        refilteringWith = null;
+
+        List<Post> changed = new ArrayList<>();
+        boolean removedChanged = false;
+        for (int i = 0; i < posts.size(); i++) {
+            Post post = posts.get(i);
+            CompiledFilters.Result result = results[i];
+            boolean wasRemoved = post.isFilterRemove();
+            if (post.setFilter(result.highlightedColor, result.stub, result.remove)) {
+                changed.add(post);
+                removedChanged |= wasRemoved != result.remove;
+            }
+        }
+
+        if (refilterVersion == postsVersion) {
+            threadFilters = filters;
+        } else {
+            // New posts came in while matching, those may have been filtered differently.
+            threadFilters = null;
+            refilter();
+        }
+
+        if (!changed.isEmpty()) {
+            Logger.d(TAG, "Refiltered " + loadable.boardCode + ", " + loadable.no + ", "
+                    + changed.size() + " posts changed");
+            for (ChanLoaderCallback l : listeners) {
+                l.onChanLoaderFiltered(refilterThread, changed, removedChanged);
+            }
+        }
+    }
+
+    /**
+     * Large threads are refreshed with only their last posts, which are merged with the loaded
+     * posts. Once in a while the full thread is loaded instead to see deletions of older posts.
+     */
+    private boolean shouldLoadTail() {
+        return loadable.isThreadMode() &&
+                thread != null &&
+                thread.posts.size() >= TAIL_MIN_POSTS &&
+                tailLoads < TAIL_FULL_LOAD_INTERVAL &&
+                loadable.getSite().endpoints().threadTail(loadable.board, loadable) != null;
     }
 
     /**
@@ -343,6 +580,15 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
     public interface ChanLoaderCallback {
         void onChanLoaderData(ChanThread result);
 
+        /**
+         * The filter outcome of some posts changed after the filters were changed.
+         *
+         * @param changed        the posts that look different now.
+         * @param removedChanged if any post was removed or brought back by a filter, the list
+         *                       of shown posts needs to be made again.
+         */
+        void onChanLoaderFiltered(ChanThread thread, List<Post> changed, boolean removedChanged);
+
         void onChanLoaderError(ChanLoaderException error);
     }
 }
@@ -0,0 +1,463 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.site.loader;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import org.floens.chan.core.model.ChanThread;
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.PostHttpIcon;
+import org.floens.chan.core.model.PostImage;
+import org.floens.chan.core.model.orm.Loadable;
+import org.floens.chan.utils.IOUtils;
+import org.floens.chan.utils.Logger;
+import org.jsoup.nodes.Entities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Stores the posts of loaded threads on disk, so that a thread that is no longer in memory can
+ * be shown right away, or without a connection, while it is loaded again.
+ * <p>
+ * A snapshot is written after a successful load that changed the thread, at most once every
+ * {@link #MIN_SAVE_INTERVAL} per thread, and keyed by the id of the {@link Loadable}. It
+ * contains the post data as the site sent it, including the comment html.
+ * Spans, linkables and the replies are theme and settings dependent and are rebuilt by parsing
+ * the snapshot again, which is cheap compared to loading the thread.
+ * <p>
+ * Snapshots are gzipped and only the {@link #MAX_SNAPSHOTS} most recently written ones are
+ * kept. All file access happens on one worker thread, in order.
+ */
+public class ThreadSnapshotStore {
+    private static final String TAG = "ThreadSnapshotStore";
+
+    private static final int MAGIC = 0x436c5453;
+    private static final int VERSION = 1;
+    private static final int MAX_SNAPSHOTS = 100;
+    private static final long MIN_SAVE_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    // Main thread only. The last write of each thread by loadable id, to skip writing the same
+    // thread again.
+    private final Map<Integer, SavedState> saved =
+            new LinkedHashMap<Integer, SavedState>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, SavedState> eldest) {
+                    return size() > MAX_SNAPSHOTS;
+                }
+            };
+
+    public ThreadSnapshotStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Write a snapshot of the thread. Skipped when the thread did not change since the last
+     * write, or when that write was less than {@link #MIN_SAVE_INTERVAL} ago. The state of the
+     * op and the comments are copied on the main thread, the posts themselves are immutable.
+     *
+     * @param rawComments the comment html of the posts by post number, the posts only have the
+     *                    parsed comment.
+     */
+    @MainThread
+    public void save(Loadable loadable, ChanThread thread, Map<Integer, String> rawComments,
+                     @Nullable String lastModified) {
+        if (!loadable.isThreadMode() || loadable.id <= 0 || thread.op == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        SavedState last = saved.get(loadable.id);
+        if (last != null && (last.matches(lastModified, thread.posts.size()) ||
+                now - last.time < MIN_SAVE_INTERVAL)) {
+            return;
+        }
+        saved.put(loadable.id, new SavedState(lastModified, thread.posts.size(), now));
+
+        final File file = getFile(loadable);
+        final List<Post> posts = new ArrayList<>(thread.posts);
+        final List<String> comments = new ArrayList<>(posts.size());
+        for (int i = 0; i < posts.size(); i++) {
+            comments.add(rawComments.get(posts.get(i).no));
+        }
+        final OpState opState = new OpState(thread.op);
+
+        executor.execute(() -> {
+            File tmpFile = new File(directory, file.getName() + ".tmp");
+            DataOutputStream out = null;
+            try {
+                if (!directory.isDirectory() && !directory.mkdirs()) {
+                    throw new IOException("Could not create snapshot directory");
+                }
+
+                out = new DataOutputStream(new BufferedOutputStream(
+                        new GZIPOutputStream(new FileOutputStream(tmpFile))));
+                write(out, posts, comments, opState, lastModified);
+                out.close();
+                out = null;
+
+                if (!tmpFile.renameTo(file)) {
+                    throw new IOException("Could not rename snapshot");
+                }
+            } catch (IOException e) {
+                Logger.e(TAG, "Error writing snapshot", e);
+                IOUtils.closeQuietly(out);
+                if (!tmpFile.delete()) {
+                    Logger.w(TAG, "Could not delete " + tmpFile);
+                }
+                return;
+            }
+
+            trim();
+        });
+    }
+
+    /**
+     * Read the snapshot of the thread, if there is one.
+     *
+     * @param callback always called on the worker thread with the snapshot, or {@code null} if
+     *                 there is no usable snapshot.
+     */
+    @AnyThread
+    public void load(Loadable loadable, LoadCallback callback) {
+        final boolean hasSnapshot = loadable.isThreadMode() && loadable.id > 0;
+        final File file = hasSnapshot ? getFile(loadable) : null;
+
+        executor.execute(() -> {
+            Snapshot snapshot = null;
+            if (hasSnapshot && file.exists()) {
+                DataInputStream in = null;
+                try {
+                    in = new DataInputStream(new BufferedInputStream(
+                            new GZIPInputStream(new FileInputStream(file))));
+                    snapshot = read(in, loadable);
+                } catch (IOException | RuntimeException e) {
+                    Logger.e(TAG, "Error reading snapshot, deleting", e);
+                    if (!file.delete()) {
+                        Logger.w(TAG, "Could not delete " + file);
+                    }
+                } finally {
+                    IOUtils.closeQuietly(in);
+                }
+            }
+
+            callback.onSnapshotLoaded(snapshot);
+        });
+    }
+
+    private File getFile(Loadable loadable) {
+        return new File(directory, loadable.id + ".snapshot");
+    }
+
+    @WorkerThread
+    private void trim() {
+        File[] files = directory.listFiles();
+        if (files == null || files.length <= MAX_SNAPSHOTS) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(b.lastModified(), a.lastModified());
+            }
+        });
+
+        for (int i = MAX_SNAPSHOTS; i < files.length; i++) {
+            if (!files[i].delete()) {
+                Logger.w(TAG, "Could not delete " + files[i]);
+            }
+        }
+    }
+
+    private void write(DataOutputStream out, List<Post> posts, List<String> comments,
+                       OpState opState, @Nullable String lastModified) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, lastModified);
+
+        out.writeInt(posts.size());
+        for (int i = 0; i < posts.size(); i++) {
+            Post post = posts.get(i);
+
+            out.writeInt(post.no);
+            out.writeBoolean(post.isOP);
+            out.writeLong(post.time);
+            // Name and subject are unescaped by the parser, store them escaped again.
+            writeString(out, escape(post.name));
+            writeString(out, escape(post.subject));
+            writeString(out, comments.get(i));
+            writeString(out, post.tripcode);
+            writeString(out, post.rawPosterId);
+            writeString(out, post.capcode);
+            out.writeBoolean(post.deleted.get());
+
+            out.writeInt(post.images.size());
+            for (int j = 0; j < post.images.size(); j++) {
+                PostImage image = post.images.get(j);
+                writeString(out, image.originalName);
+                writeUrl(out, image.thumbnailUrl);
+                writeUrl(out, image.spoilerThumbnailUrl);
+                writeUrl(out, image.imageUrl);
+                writeString(out, image.filename);
+                writeString(out, image.extension);
+                out.writeInt(image.imageWidth);
+                out.writeInt(image.imageHeight);
+                out.writeBoolean(image.spoiler);
+                out.writeLong(image.size);
+                writeString(out, image.md5);
+            }
+
+            if (post.httpIcons == null) {
+                out.writeInt(0);
+            } else {
+                out.writeInt(post.httpIcons.size());
+                for (int j = 0; j < post.httpIcons.size(); j++) {
+                    PostHttpIcon icon = post.httpIcons.get(j);
+                    writeUrl(out, icon.url);
+                    writeString(out, icon.name);
+                }
+            }
+        }
+
+        out.writeBoolean(opState.sticky);
+        out.writeBoolean(opState.closed);
+        out.writeBoolean(opState.archived);
+        out.writeInt(opState.replies);
+        out.writeInt(opState.imagesCount);
+        out.writeInt(opState.uniqueIps);
+        out.writeLong(opState.lastModified);
+    }
+
+    private Snapshot read(DataInputStream in, Loadable loadable) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Snapshot header mismatch");
+        }
+
+        String lastModified = readString(in);
+
+        int count = in.readInt();
+        List<Post.Builder> posts = new ArrayList<>(count);
+        Set<Integer> deleted = new HashSet<>();
+        int opId = -1;
+        for (int i = 0; i < count; i++) {
+            Post.Builder builder = new Post.Builder()
+                    .board(loadable.board)
+                    .id(in.readInt())
+                    .op(in.readBoolean())
+                    .setUnixTimestampSeconds(in.readLong())
+                    .name(readString(in))
+                    .subject(readString(in))
+                    .comment(readString(in))
+                    .tripcode(readString(in))
+                    .posterId(readString(in))
+                    .moderatorCapcode(readString(in));
+
+            if (builder.op) {
+                opId = builder.id;
+            }
+            if (in.readBoolean()) {
+                deleted.add(builder.id);
+            }
+
+            int imageCount = in.readInt();
+            if (imageCount > 0) {
+                List<PostImage> images = new ArrayList<>(imageCount);
+                for (int j = 0; j < imageCount; j++) {
+                    images.add(new PostImage.Builder()
+                            .originalName(readString(in))
+                            .thumbnailUrl(readUrl(in))
+                            .spoilerThumbnailUrl(readUrl(in))
+                            .imageUrl(readUrl(in))
+                            .filename(readString(in))
+                            .extension(readString(in))
+                            .imageWidth(in.readInt())
+                            .imageHeight(in.readInt())
+                            .spoiler(in.readBoolean())
+                            .size(in.readLong())
+                            .md5(readString(in))
+                            .build());
+                }
+                builder.images(images);
+            }
+
+            int iconCount = in.readInt();
+            for (int j = 0; j < iconCount; j++) {
+                builder.addHttpIcon(new PostHttpIcon(readUrl(in), readString(in)));
+            }
+
+            posts.add(builder);
+        }
+
+        if (opId < 0) {
+            throw new IOException("Snapshot has no op");
+        }
+        for (int i = 0; i < posts.size(); i++) {
+            posts.get(i).opId(opId);
+        }
+
+        // Like the readers do, the op state is given separately.
+        Post.Builder op = new Post.Builder()
+                .sticky(in.readBoolean())
+                .closed(in.readBoolean())
+                .archived(in.readBoolean())
+                .replies(in.readInt())
+                .images(in.readInt())
+                .uniqueIps(in.readInt())
+                .lastModified(in.readLong());
+
+        return new Snapshot(posts, op, deleted, lastModified);
+    }
+
+    @Nullable
+    private static String escape(@Nullable String string) {
+        return string == null ? null : Entities.escape(string);
+    }
+
+    private static void writeUrl(DataOutputStream out, @Nullable HttpUrl url) throws IOException {
+        writeString(out, url == null ? null : url.toString());
+    }
+
+    @Nullable
+    private static HttpUrl readUrl(DataInputStream in) throws IOException {
+        String url = readString(in);
+        return url == null ? null : HttpUrl.parse(url);
+    }
+
+    /**
+     * Length prefixed, writeUTF is limited to 64K.
+     */
+    private static void writeString(DataOutputStream out, @Nullable String string)
+            throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = string.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    @Nullable
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    public static class Snapshot {
+        public final List<Post.Builder> posts;
+        /**
+         * The op state, like {@link org.floens.chan.core.site.parser.ChanReaderProcessingQueue#setOp}.
+         */
+        public final Post.Builder op;
+        public final Set<Integer> deleted;
+        @Nullable
+        public final String lastModified;
+
+        private Snapshot(List<Post.Builder> posts, Post.Builder op, Set<Integer> deleted,
+                         @Nullable String lastModified) {
+            this.posts = posts;
+            this.op = op;
+            this.deleted = deleted;
+            this.lastModified = lastModified;
+        }
+    }
+
+    public interface LoadCallback {
+        @WorkerThread
+        void onSnapshotLoaded(@Nullable Snapshot snapshot);
+    }
+
+    private static class SavedState {
+        @Nullable
+        final String lastModified;
+        final int postCount;
+        final long time;
+
+        SavedState(@Nullable String lastModified, int postCount, long time) {
+            this.lastModified = lastModified;
+            this.postCount = postCount;
+            this.time = time;
+        }
+
+        /**
+         * The same response as this write, without a Last-Modified only the post count tells.
+         */
+        boolean matches(@Nullable String lastModified, int postCount) {
+            return this.postCount == postCount && (this.lastModified == null ?
+                    lastModified == null : this.lastModified.equals(lastModified));
+        }
+    }
+
+    private static class OpState {
+        final boolean sticky;
+        final boolean closed;
+        final boolean archived;
+        final int replies;
+        final int imagesCount;
+        final int uniqueIps;
+        final long lastModified;
+
+        @MainThread
+        OpState(Post op) {
+            sticky = op.isSticky();
+            closed = op.isClosed();
+            archived = op.isArchived();
+            replies = op.getReplies();
+            imagesCount = op.getImagesCount();
+            uniqueIps = op.getUniqueIps();
+            lastModified = op.getLastModified();
+        }
+    }
+}
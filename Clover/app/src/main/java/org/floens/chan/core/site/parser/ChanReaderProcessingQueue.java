@@ -36,6 +36,8 @@ public class ChanReaderProcessingQueue {
     private List<Post> toReuse = new ArrayList<>();
     private List<Post.Builder> toParse = new ArrayList<>();
     private Post.Builder op;
+    private int tailId = 0;
+    private ParseListener parseListener;
 
     public ChanReaderProcessingQueue(List<Post> toReuse, Loadable loadable) {
         this.loadable = loadable;
@@ -56,12 +58,22 @@ public class ChanReaderProcessingQueue {
 
     public void addForParse(Post.Builder postBuilder) {
         toParse.add(postBuilder);
+        if (parseListener != null) {
+            parseListener.onAddForParse(postBuilder);
+        }
     }
 
     public void setOp(Post.Builder op) {
         this.op = op;
     }
 
+    /**
+     * Set by the reader when the response is a tail with posts left out.
+     */
+    public void setTailId(int tailId) {
+        this.tailId = tailId;
+    }
+
     public Loadable getLoadable() {
         return loadable;
     }
@@ -77,4 +89,19 @@ public class ChanReaderProcessingQueue {
     Post.Builder getOp() {
         return op;
     }
+
+    int getTailId() {
+        return tailId;
+    }
+
+    void setParseListener(ParseListener parseListener) {
+        this.parseListener = parseListener;
+    }
+
+    /**
+     * Called from the reader thread for every post that needs parsing, as soon as it is read.
+     */
+    interface ParseListener {
+        void onAddForParse(Post.Builder postBuilder);
+    }
 }
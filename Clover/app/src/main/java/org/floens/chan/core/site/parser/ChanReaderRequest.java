@@ -19,19 +19,36 @@ package org.floens.chan.core.site.parser;
 
 import static org.floens.chan.Chan.inject;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.JsonReader;
 
+import com.android.volley.Header;
+import com.android.volley.NetworkError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Response;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+
 import org.floens.chan.core.database.DatabaseManager;
 import org.floens.chan.core.database.DatabaseSavedReplyManager;
+import org.floens.chan.core.di.UserAgentProvider;
+import org.floens.chan.core.manager.CompiledFilters;
 import org.floens.chan.core.manager.FilterEngine;
 import org.floens.chan.core.model.Post;
-import org.floens.chan.core.model.orm.Filter;
+import org.floens.chan.core.model.ReplyGraph;
 import org.floens.chan.core.model.orm.Loadable;
-import org.floens.chan.core.net.JsonReaderRequest;
+import org.floens.chan.core.settings.ChanSettings;
 import org.floens.chan.core.site.loader.ChanLoaderRequestParams;
 import org.floens.chan.core.site.loader.ChanLoaderResponse;
+import org.floens.chan.core.site.loader.ThreadSnapshotStore;
+import org.floens.chan.utils.IOUtils;
+import org.floens.chan.utils.Logger;
 import org.floens.chan.utils.Time;
 
+import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -39,32 +56,28 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.Executor;
 
 import javax.inject.Inject;
 
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
 
 /**
  * Process a typical imageboard json response.<br>
+ * The json is read straight from the response body while it is downloaded, and every post is
+ * given to the parse executor as soon as it is read.<br>
  * This class is highly multithreaded, take good care to not access models that are to be only
  * changed on the main thread.
  */
-public class ChanReaderRequest extends JsonReaderRequest<ChanLoaderResponse> {
+public class ChanReaderRequest implements Callback {
     private static final String TAG = "ChanReaderRequest";
-    private static final boolean LOG_TIMING = false;
-
-    private static final int THREAD_COUNT;
-    private static final ExecutorService EXECUTOR;
-
-    static {
-        THREAD_COUNT = Runtime.getRuntime().availableProcessors();
-        EXECUTOR = Executors.newFixedThreadPool(THREAD_COUNT);
-    }
 
     @Inject
     DatabaseManager databaseManager;
@@ -72,40 +85,55 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanLoaderResponse> {
     @Inject
     FilterEngine filterEngine;
 
+    @Inject
+    OkHttpClient okHttpClient;
+
+    @Inject
+    UserAgentProvider userAgentProvider;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Response.Listener<ChanLoaderResponse> listener;
+    private final Response.ErrorListener errorListener;
+    private final String url;
+
     private Loadable loadable;
     private List<Post> cached;
     private ChanReader reader;
     private DatabaseSavedReplyManager databaseSavedReplyManager;
 
-    private List<Filter> filters;
+    private CompiledFilters filters;
     private long startLoad;
+    private final ParseTimings timings = new ParseTimings();
+
+    private String ifModifiedSince;
+    private String lastModified;
+    private boolean deferComments;
+
+    private Call call;
+    // Set on the main thread, responses are not delivered after a cancel.
+    private volatile boolean cancelled = false;
 
     public ChanReaderRequest(ChanLoaderRequestParams request) {
-        super(getChanUrl(request.loadable).toString(), request.listener, request.errorListener);
         inject(this);
 
+        url = getChanUrl(request.loadable, request.tail).toString();
+        listener = request.listener;
+        errorListener = request.errorListener;
+
         // Copy the loadable and cached list. The cached array may changed/cleared by other threads.
         loadable = request.loadable.copy();
         cached = new ArrayList<>(request.cached);
         reader = request.chanReader;
+        ifModifiedSince = request.ifModifiedSince;
+        deferComments = ChanSettings.lazyCommentParsing.get();
 
-        filters = new ArrayList<>();
-        List<Filter> enabledFilters = filterEngine.getEnabledFilters();
-        for (int i = 0; i < enabledFilters.size(); i++) {
-            Filter filter = enabledFilters.get(i);
-
-            if (filterEngine.matchesBoard(filter, loadable.board)) {
-                // copy the filter because it will get used on other threads
-                filters.add(filter.copy());
-            }
-        }
-
-        startLoad = Time.startTiming();
+        filters = filterEngine.compileFilters(
+                filterEngine.getFilterSnapshot().getFilters(loadable.board));
 
         databaseSavedReplyManager = databaseManager.getDatabaseSavedReplyManager();
     }
 
-    private static HttpUrl getChanUrl(Loadable loadable) {
+    private static HttpUrl getChanUrl(Loadable loadable, boolean tail) {
         HttpUrl url;
 
         if (loadable.site == null) {
@@ -116,7 +144,9 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanLoaderResponse> {
             throw new NullPointerException("Loadable.board == null");
         }
 
-        if (loadable.isThreadMode()) {
+        if (loadable.isThreadMode() && tail) {
+            url = loadable.site.endpoints().threadTail(loadable.board, loadable);
+        } else if (loadable.isThreadMode()) {
             url = loadable.site.endpoints().thread(loadable.board, loadable);
         } else if (loadable.isCatalogMode()) {
             url = loadable.site.endpoints().catalog(loadable.board);
@@ -126,98 +156,275 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanLoaderResponse> {
         return url;
     }
 
+    /**
+     * Start the request. The result is delivered on the main thread to the listeners of the
+     * {@link ChanLoaderRequestParams}.
+     */
+    public void execute() {
+        Request.Builder requestBuilder = new Request.Builder()
+                .url(url)
+                .header("User-Agent", userAgentProvider.getUserAgent());
+        if (ifModifiedSince != null) {
+            requestBuilder.header("If-Modified-Since", ifModifiedSince);
+        }
+
+        startLoad = Time.startTiming();
+
+        call = okHttpClient.newCall(requestBuilder.build());
+        call.enqueue(this);
+    }
+
+    /**
+     * Build the thread from its stored snapshot instead of loading it. The snapshot is parsed
+     * like a response, an error is delivered when there is no snapshot.
+     *
+     * @param parseExecutor runs the parse, so that it does not hold up the snapshot store.
+     */
+    public void executeSnapshot(ThreadSnapshotStore snapshotStore, Executor parseExecutor) {
+        startLoad = Time.startTiming();
+
+        snapshotStore.load(loadable, snapshot -> {
+            if (cancelled) {
+                return;
+            }
+
+            if (snapshot == null) {
+                deliverError(new VolleyError("No snapshot"));
+                return;
+            }
+
+            parseExecutor.execute(() -> {
+                if (cancelled) {
+                    return;
+                }
+
+                try {
+                    deliverResponse(readSnapshot(snapshot));
+                } catch (Exception e) {
+                    Logger.e(TAG, "Error parsing snapshot", e);
+                    deliverError(new VolleyError(e));
+                }
+            });
+        });
+    }
+
+    /**
+     * Cancel the request, the listeners will not be called after this.
+     */
+    public void cancel() {
+        cancelled = true;
+        if (call != null) {
+            call.cancel();
+        }
+    }
+
     @Override
-    public Priority getPriority() {
-        return Priority.HIGH;
+    public void onFailure(Call call, IOException e) {
+        if (e instanceof SocketTimeoutException) {
+            deliverError(new TimeoutError());
+        } else {
+            deliverError(new NetworkError(e));
+        }
+    }
+
+    /**
+     * Summary of the phase timings of the last completed request, for the developer settings.
+     */
+    public static String getTimingsSummary() {
+        return ParseTimings.getLastSummary();
     }
 
     @Override
-    public ChanLoaderResponse readJson(JsonReader reader) throws Exception {
-        if (LOG_TIMING) {
-            Time.endTiming("Network", startLoad);
+    public void onResponse(Call call, okhttp3.Response response) {
+        timings.network = System.nanoTime() - startLoad;
+
+        ResponseBody body = response.body();
+        try {
+            lastModified = response.header("Last-Modified");
+
+            if (response.code() == 304) {
+                // Nothing changed, skip reading and processing the posts altogether.
+                deliverResponse(ChanLoaderResponse.notModified(
+                        lastModified != null ? lastModified : ifModifiedSince));
+                return;
+            }
+
+            if (!response.isSuccessful()) {
+                deliverError(new ServerError(new NetworkResponse(response.code(), null,
+                        false, 0, Collections.<Header>emptyList())));
+                return;
+            }
+
+            if (body == null) {
+                deliverError(new VolleyError("No body"));
+                return;
+            }
+
+            JsonReader jsonReader = new JsonReader(body.charStream());
+            try {
+                deliverResponse(readJson(jsonReader));
+            } finally {
+                IOUtils.closeQuietly(jsonReader);
+            }
+        } catch (IOException e) {
+            // Reading the body, the connection failed halfway.
+            onFailure(call, e);
+        } catch (Exception e) {
+            Logger.e(TAG, "Error reading response", e);
+            deliverError(new VolleyError(e));
+        } finally {
+            IOUtils.closeQuietly(body);
         }
+    }
 
-        long load = Time.startTiming();
+    private void deliverResponse(ChanLoaderResponse response) {
+        handler.post(() -> {
+            if (!cancelled) {
+                listener.onResponse(response);
+            }
+        });
+    }
+
+    private void deliverError(VolleyError error) {
+        handler.post(() -> {
+            if (!cancelled) {
+                errorListener.onErrorResponse(error);
+            }
+        });
+    }
+
+    private ChanLoaderResponse readJson(JsonReader reader) throws Exception {
+        long read = Time.startTiming();
 
         ChanReaderProcessingQueue processing = new ChanReaderProcessingQueue(cached, loadable);
+        StreamingParser parser = new StreamingParser(processing);
+        processing.setParseListener(parser);
 
-        if (loadable.isThreadMode()) {
-            this.reader.loadThread(reader, processing);
-        } else if (loadable.isCatalogMode()) {
-            this.reader.loadCatalog(reader, processing);
-        } else {
-            throw new IllegalArgumentException("Unknown mode");
+        try {
+            if (loadable.isThreadMode()) {
+                this.reader.loadThread(reader, processing);
+            } else if (loadable.isCatalogMode()) {
+                this.reader.loadCatalog(reader, processing);
+            } else {
+                throw new IllegalArgumentException("Unknown mode");
+            }
+        } catch (Exception e) {
+            parser.cancel();
+            throw e;
         }
 
-        if (LOG_TIMING) {
-            Time.endTiming("Load json", load);
-        }
+        long parse = Time.startTiming();
+        timings.read = parse - read;
 
-        List<Post> list = parsePosts(processing);
-        return processPosts(processing.getOp(), list);
-    }
+        List<Post> list = parser.collect();
 
-    // Concurrently parses the new posts with an executor
-    private List<Post> parsePosts(ChanReaderProcessingQueue queue) throws InterruptedException, ExecutionException {
-        long parsePosts = Time.startTiming();
+        long process = Time.startTiming();
+        timings.parse = process - parse;
 
-        List<Post> total = new ArrayList<>();
+        ChanLoaderResponse response = processPosts(processing.getOp(), list,
+                processing.getTailId(), parser.rawComments);
 
-        List<Post> cached = queue.getToReuse();
-        total.addAll(cached);
+        timings.process = System.nanoTime() - process;
+        timings.posts = list.size();
+        timings.chunks = parser.scheduler.getChunkCount();
+        timings.publish(url);
 
-        List<Post.Builder> toParse = queue.getToParse();
+        return response;
+    }
 
-        // A list of all ids in the thread. Used for checking if a quote if for the current
-        // thread or externally.
-        Set<Integer> internalIds = new HashSet<>();
-        // All ids of cached posts.
-        for (int i = 0; i < cached.size(); i++) {
-            internalIds.add(cached.get(i).no);
+    private ChanLoaderResponse readSnapshot(ThreadSnapshotStore.Snapshot snapshot) throws Exception {
+        lastModified = snapshot.lastModified;
+
+        ChanReaderProcessingQueue processing = new ChanReaderProcessingQueue(cached, loadable);
+        StreamingParser parser = new StreamingParser(processing);
+        processing.setParseListener(parser);
+
+        processing.setOp(snapshot.op);
+        for (int i = 0; i < snapshot.posts.size(); i++) {
+            processing.addForParse(snapshot.posts.get(i));
         }
-        // And ids for posts to parse, from the builder.
-        for (int i = 0; i < toParse.size(); i++) {
-            internalIds.add(toParse.get(i).id);
+
+        List<Post> list = parser.collect();
+        for (int i = 0; i < list.size(); i++) {
+            Post post = list.get(i);
+            if (snapshot.deleted.contains(post.no)) {
+                post.deleted.set(true);
+            }
         }
-        // Do not modify internalIds after this point.
-        internalIds = Collections.unmodifiableSet(internalIds);
-
-        List<Callable<Post>> tasks = new ArrayList<>(toParse.size());
-        for (int i = 0; i < toParse.size(); i++) {
-            Post.Builder post = toParse.get(i);
-            tasks.add(new PostParseCallable(filterEngine,
-                    filters,
+
+        return processPosts(processing.getOp(), list, 0, parser.rawComments);
+    }
+
+    /**
+     * Concurrently parses the new posts with the {@link PostParseScheduler}, posts are handed to
+     * it as soon as the reader finished reading them.
+     */
+    private class StreamingParser implements ChanReaderProcessingQueue.ParseListener {
+        private final ChanReaderProcessingQueue queue;
+        private final PostParseScheduler scheduler = new PostParseScheduler();
+
+        // All ids in the thread that are known so far. Used for checking if a quote is for the
+        // current thread or externally. Quotes point to older posts, which are read before.
+        private final Set<Integer> internalIds =
+                Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+        // The comment html of the posts given to the parser, the posts only keep the parsed
+        // comment. Only added to by the reader thread.
+        private final Map<Integer, String> rawComments = new HashMap<>();
+
+        private StreamingParser(ChanReaderProcessingQueue queue) {
+            this.queue = queue;
+
+            // All ids of cached posts.
+            for (int i = 0; i < cached.size(); i++) {
+                internalIds.add(cached.get(i).no);
+            }
+        }
+
+        @Override
+        public void onAddForParse(Post.Builder post) {
+            internalIds.add(post.id);
+            rawComments.put(post.id, post.comment == null ? "" : post.comment.toString());
+            scheduler.add(new PostParseCallable(filters,
                     databaseSavedReplyManager,
                     post,
                     reader,
-                    internalIds));
+                    internalIds,
+                    deferComments));
         }
 
-        if (!tasks.isEmpty()) {
-            List<Future<Post>> futures = EXECUTOR.invokeAll(tasks);
-            for (int i = 0; i < futures.size(); i++) {
-                Future<Post> future = futures.get(i);
-                Post parsedPost = future.get();
-                if (parsedPost != null) {
-                    total.add(parsedPost);
-                }
-            }
+        private List<Post> collect() throws InterruptedException, ExecutionException {
+            List<Post> total = new ArrayList<>();
 
-            if (LOG_TIMING) {
-                Time.endTiming("Parse posts with " + THREAD_COUNT + " threads", parsePosts);
-            }
+            total.addAll(queue.getToReuse());
+            total.addAll(scheduler.finish());
+
+            return total;
         }
 
-        return total;
+        private void cancel() {
+            scheduler.cancel();
+        }
     }
 
-    private ChanLoaderResponse processPosts(Post.Builder op, List<Post> allPost) throws Exception {
-        ChanLoaderResponse response = new ChanLoaderResponse(op, new ArrayList<Post>(allPost.size()));
+    private ChanLoaderResponse processPosts(Post.Builder op, List<Post> allPost, int tailId,
+                                            Map<Integer, String> rawComments) throws Exception {
+        // With a tail response only the posts from the start of the tail can be checked for
+        // deletion, older posts were not sent.
+        int tailStart = 0;
+        if (tailId > 0) {
+            tailStart = getTailStart(allPost);
+            if (tailStart < 0) {
+                return ChanLoaderResponse.tailMismatch(lastModified);
+            }
+        }
+
+        ChanLoaderResponse response = new ChanLoaderResponse(op, new ArrayList<Post>(allPost.size()),
+                lastModified, filters, rawComments);
 
         List<Post> cachedPosts = new ArrayList<>();
         List<Post> newPosts = new ArrayList<>();
         if (cached.size() > 0) {
-            long deleteCheck = Time.startTiming();
             // Add all posts that were parsed before
             cachedPosts.addAll(cached);
 
@@ -237,13 +444,11 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanLoaderResponse> {
             if (loadable.isThreadMode()) {
                 for (int i = 0; i < cachedPosts.size(); i++) {
                     Post cachedPost = cachedPosts.get(i);
-                    cachedPost.deleted.set(!serverPostsByNo.containsKey(cachedPost.no));
+                    if (cachedPost.isOP || cachedPost.no >= tailStart) {
+                        cachedPost.deleted.set(!serverPostsByNo.containsKey(cachedPost.no));
+                    }
                 }
             }
-            if (LOG_TIMING) {
-                Time.endTiming("Delete check", deleteCheck);
-            }
-            long newCheck = Time.startTiming();
 
             // If there's a post in the list from the server, that's not in the cached list, add it.
             for (int i = 0; i < allPost.size(); i++) {
@@ -252,9 +457,6 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanLoaderResponse> {
                     newPosts.add(serverPost);
                 }
             }
-            if (LOG_TIMING) {
-                Time.endTiming("New check", newCheck);
-            }
         } else {
             newPosts.addAll(allPost);
         }
@@ -264,54 +466,46 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanLoaderResponse> {
         allPosts.addAll(newPosts);
 
         if (loadable.isThreadMode()) {
-            Map<Integer, Post> postsByNo = new HashMap<>();
+            // The cached posts are at the start, their quotes are copied from the old graph.
+            ReplyGraph previous = cachedPosts.isEmpty() ? null : cachedPosts.get(0).getReplyGraph();
+            ReplyGraph replyGraph = ReplyGraph.build(previous, allPosts);
             for (int i = 0; i < allPosts.size(); i++) {
-                Post post = allPosts.get(i);
-                postsByNo.put(post.no, post);
+                allPosts.get(i).setReplyGraph(replyGraph);
             }
+        }
 
-            // Maps post no's to a list of no's that that post received replies from
-            Map<Integer, List<Integer>> replies = new HashMap<>();
+        response.posts.addAll(allPosts);
 
-            long collectReplies = Time.startTiming();
-            for (int i = 0; i < allPosts.size(); i++) {
-                Post sourcePost = allPosts.get(i);
+        return response;
+    }
 
-                for (int replyTo : sourcePost.repliesTo) {
-                    List<Integer> value = replies.get(replyTo);
-                    if (value == null) {
-                        value = new ArrayList<>(3);
-                        replies.put(replyTo, value);
-                    }
-                    value.add(sourcePost.no);
-                }
-            }
-            if (LOG_TIMING) {
-                Time.endTiming("Collect replies", collectReplies);
-            }
-            long mapReplies = Time.startTiming();
-
-            for (Map.Entry<Integer, List<Integer>> entry : replies.entrySet()) {
-                int key = entry.getKey();
-                List<Integer> value = entry.getValue();
-
-                Post subject = postsByNo.get(key);
-                // Sometimes a post replies to a ghost, a post that doesn't exist.
-                if (subject != null) {
-                    synchronized (subject.repliesFrom) {
-                        subject.repliesFrom.clear();
-                        subject.repliesFrom.addAll(value);
-                    }
-                }
+    /**
+     * The lowest reply no of a tail response, or -1 if the tail does not contain any of the
+     * cached replies. The tail is the end of the thread, so when it has a cached reply there
+     * are no posts missing between the cached posts and the tail.
+     */
+    private int getTailStart(List<Post> tailPosts) {
+        Set<Integer> cachedNos = new HashSet<>();
+        for (int i = 0; i < cached.size(); i++) {
+            cachedNos.add(cached.get(i).no);
+        }
+
+        int tailStart = -1;
+        boolean overlaps = false;
+        for (int i = 0; i < tailPosts.size(); i++) {
+            Post post = tailPosts.get(i);
+            if (post.isOP) {
+                continue;
             }
 
-            if (LOG_TIMING) {
-                Time.endTiming("Map replies", mapReplies);
+            if (tailStart < 0 || post.no < tailStart) {
+                tailStart = post.no;
+            }
+            if (cachedNos.contains(post.no)) {
+                overlaps = true;
             }
         }
 
-        response.posts.addAll(allPosts);
-
-        return response;
+        return overlaps ? tailStart : -1;
     }
 }
@@ -0,0 +1,148 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.site.parser;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.orm.Loadable;
+
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parses the deferred comments of posts, see {@link PostParser#parseDeferred}.
+ * <p>
+ * Posts that are bound to a view are parsed first, the most recently bound first, so that the
+ * posts on screen are done before the ones that were scrolled past. All other posts of a
+ * loaded thread are parsed after that with {@link #prefetch(Loadable, List)}, until the thread
+ * is closed and {@link #cancelPrefetch(Loadable)} drops them.
+ */
+public class CommentParseQueue {
+    private static final int THREAD_COUNT =
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            THREAD_COUNT, THREAD_COUNT, 0L, TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>());
+
+    private static final Handler HANDLER = new Handler(Looper.getMainLooper());
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private CommentParseQueue() {
+    }
+
+    /**
+     * Parse the comment of a post that is shown, before any other queued post.
+     *
+     * @param onParsed called on the main thread once the comment is parsed, also when it
+     *                 already was.
+     */
+    @MainThread
+    public static void request(Post post, Runnable onParsed) {
+        if (post.isCommentParsed()) {
+            HANDLER.post(onParsed);
+            return;
+        }
+
+        EXECUTOR.execute(new ParseTask(post, null, onParsed, true, SEQUENCE.incrementAndGet()));
+    }
+
+    /**
+     * Parse the comments of all posts of the thread in the background, after the requested
+     * ones. Replaces the prefetches queued for an earlier load of the thread.
+     */
+    @AnyThread
+    public static void prefetch(Loadable loadable, List<Post> posts) {
+        cancelPrefetch(loadable);
+
+        for (int i = 0; i < posts.size(); i++) {
+            Post post = posts.get(i);
+            if (!post.isCommentParsed()) {
+                EXECUTOR.execute(new ParseTask(post, loadable, null, false,
+                        SEQUENCE.incrementAndGet()));
+            }
+        }
+    }
+
+    /**
+     * Drop the queued prefetches of the thread, when it is closed. Posts that are shown later
+     * are still parsed when they are requested.
+     */
+    @AnyThread
+    public static void cancelPrefetch(Loadable loadable) {
+        for (Runnable runnable : EXECUTOR.getQueue()) {
+            ParseTask task = (ParseTask) runnable;
+            if (!task.visible && loadable.equals(task.loadable)) {
+                EXECUTOR.remove(task);
+            }
+        }
+    }
+
+    private static class ParseTask implements Runnable, Comparable<ParseTask> {
+        private final Post post;
+        private final Loadable loadable;
+        private final Runnable onParsed;
+        private final boolean visible;
+        private final long sequence;
+
+        private ParseTask(Post post, Loadable loadable, Runnable onParsed, boolean visible,
+                          long sequence) {
+            this.post = post;
+            this.loadable = loadable;
+            this.onParsed = onParsed;
+            this.visible = visible;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            post.parseDeferredComment();
+
+            // Also when another task parsed it in the meantime, the view still shows the
+            // placeholder.
+            if (onParsed != null) {
+                HANDLER.post(onParsed);
+            }
+        }
+
+        /**
+         * Visible posts first, newest first. Prefetches in thread order.
+         */
+        @Override
+        public int compareTo(@NonNull ParseTask o) {
+            if (visible != o.visible) {
+                return visible ? -1 : 1;
+            }
+
+            if (visible) {
+                return Long.compare(o.sequence, sequence);
+            } else {
+                return Long.compare(sequence, o.sequence);
+            }
+        }
+    }
+}
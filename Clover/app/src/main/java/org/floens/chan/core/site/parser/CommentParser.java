@@ -35,6 +35,7 @@ import org.floens.chan.ui.span.AbsoluteSizeSpanHashed;
 import org.floens.chan.ui.span.ForegroundColorSpanHashed;
 import org.floens.chan.ui.theme.Theme;
 import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
 import org.jsoup.select.Elements;
 
 import java.util.ArrayList;
@@ -53,6 +54,7 @@ public class CommentParser {
     private Pattern fullQuotePattern = Pattern.compile("/(\\w+)/\\w+/(\\d+)#p(\\d+)");
     private Pattern quotePattern = Pattern.compile(".*#p(\\d+)");
     private Pattern colorPattern = Pattern.compile("color:#([0-9a-fA-F]+)");
+    private Pattern anchorHrefPattern = Pattern.compile("<a\\s[^>]*href=\"([^\"]*)\"");
 
     private Map<String, List<StyleRule>> rules = new HashMap<>();
     private List<String> internalDomains = new ArrayList<>(0);
@@ -283,8 +285,30 @@ public class CommentParser {
                 new AbsoluteSizeSpanHashed(sp(12f)));
     }
 
+    /**
+     * Add the quotes in the comment html to the replies of the post, without building the
+     * comment. Gives the same replies as a full parse with the default anchor rule.
+     */
+    public void extractReplies(PostParser.Callback callback, Post.Builder post, String commentRaw) {
+        if (!rules.containsKey("a")) {
+            return;
+        }
+
+        Matcher matcher = anchorHrefPattern.matcher(commentRaw);
+        while (matcher.find()) {
+            String href = Parser.unescapeEntities(matcher.group(1), true);
+            Link link = matchHref(post, "", href, callback);
+            if (link.type == PostLinkable.Type.QUOTE) {
+                post.addReplyTo((int) link.value);
+            }
+        }
+    }
+
     public Link matchAnchor(Post.Builder post, CharSequence text, Element anchor, PostParser.Callback callback) {
-        String href = anchor.attr("href");
+        return matchHref(post, text, anchor.attr("href"), callback);
+    }
+
+    private Link matchHref(Post.Builder post, CharSequence text, String href, PostParser.Callback callback) {
         // For inner links we handle it as relative (for sites that have multiple domains).
         String path = "";
         if (href.startsWith("//") || href.startsWith("http://") || href.startsWith("https://")) {
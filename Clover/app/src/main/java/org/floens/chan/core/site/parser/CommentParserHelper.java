@@ -17,6 +17,7 @@
  */
 package org.floens.chan.core.site.parser;
 
+import android.text.Spannable;
 import android.text.SpannableString;
 
 import androidx.annotation.AnyThread;
@@ -48,11 +49,19 @@ public class CommentParserHelper {
      * @param spannable Spannable to set the spans on.
      */
     public static void detectLinks(Theme theme, Post.Builder post, String text, SpannableString spannable) {
+        detectLinks(theme, post, text, spannable, 0);
+    }
+
+    /**
+     * Like {@link #detectLinks(Theme, Post.Builder, String, SpannableString)}, for text that
+     * starts at the given offset in the spannable.
+     */
+    public static void detectLinks(Theme theme, Post.Builder post, String text, Spannable spannable, int offset) {
         final Iterable<LinkSpan> links = LINK_EXTRACTOR.extractLinks(text);
         for (final LinkSpan link : links) {
             final String linkText = text.substring(link.getBeginIndex(), link.getEndIndex());
             final PostLinkable pl = new PostLinkable(theme, linkText, linkText, PostLinkable.Type.LINK);
-            spannable.setSpan(pl, link.getBeginIndex(), link.getEndIndex(), 0);
+            spannable.setSpan(pl, offset + link.getBeginIndex(), offset + link.getEndIndex(), 0);
             post.addLinkable(pl);
         }
     }
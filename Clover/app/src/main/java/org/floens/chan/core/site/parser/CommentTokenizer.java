@@ -0,0 +1,392 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.site.parser;
+
+import android.text.SpannableStringBuilder;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
+
+import org.floens.chan.core.model.Post;
+import org.floens.chan.ui.theme.Theme;
+import org.jsoup.internal.StringUtil;
+import org.jsoup.nodes.Attributes;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.Tag;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Parses the html of a comment into one {@link SpannableStringBuilder}, without building a
+ * Jsoup document.
+ * <p>
+ * Comments only contain a handful of inline tags, {@code <br>}, quote links and spans. These
+ * are tokenized in a single scan over the html and the {@link StyleRule}s of the
+ * {@link CommentParser} are applied when an element closes, on the text it wrapped. Any markup
+ * where the html tree builder could change the structure, like block elements, comments or
+ * misnested tags, is not handled here. {@link #parse} returns {@code null} for those and the
+ * caller should use Jsoup instead.
+ * <p>
+ * The html is tokenized completely before any rule runs, so a comment that falls back did not
+ * add linkables or replies to the post yet.
+ */
+@AnyThread
+public class CommentTokenizer {
+    private static final String WBR = "<wbr>";
+
+    /**
+     * Tags without special handling in the html tree builder as long as they are nested
+     * properly.
+     */
+    private static final Set<String> INLINE_TAGS = new HashSet<>(Arrays.asList(
+            "a", "span", "s", "b", "strong", "i", "em", "u"));
+
+    private static final Set<String> VOID_TAGS = new HashSet<>(Arrays.asList("br"));
+
+    private final CommentParser commentParser;
+
+    public CommentTokenizer(CommentParser commentParser) {
+        this.commentParser = commentParser;
+    }
+
+    /**
+     * Parse the comment html.
+     *
+     * @return the parsed comment, or {@code null} if the html contains markup that is not
+     * supported, nothing was added to the post in that case.
+     */
+    @Nullable
+    public CharSequence parse(Theme theme, Post.Builder post, String html,
+                              PostParser.Callback callback) {
+        List<Token> tokens = tokenize(html);
+        if (tokens == null) {
+            return null;
+        }
+
+        return emit(theme, post, callback, tokens);
+    }
+
+    @Nullable
+    private List<Token> tokenize(String html) {
+        List<Token> tokens = new ArrayList<>();
+        Deque<String> open = new ArrayDeque<>();
+        // <wbr> is dropped and joins the text on both sides, like the text replace before the
+        // Jsoup parse does. Long links are broken up with them.
+        StringBuilder text = new StringBuilder();
+
+        int length = html.length();
+        int i = 0;
+        while (i < length) {
+            if (html.charAt(i) != '<') {
+                int next = html.indexOf('<', i);
+                if (next < 0) {
+                    next = length;
+                }
+                text.append(html, i, next);
+                i = next;
+                continue;
+            }
+
+            if (html.startsWith(WBR, i)) {
+                i += WBR.length();
+                continue;
+            }
+
+            if (text.length() > 0) {
+                tokens.add(Token.text(text.toString()));
+                text.setLength(0);
+            }
+
+            Token tag;
+            if (i + 1 < length && html.charAt(i + 1) == '/') {
+                tag = readEndTag(html, i + 2);
+                if (tag == null || open.isEmpty() || !open.peek().equals(tag.tag)) {
+                    return null;
+                }
+                open.pop();
+            } else {
+                tag = readStartTag(html, i + 1);
+                if (tag == null) {
+                    return null;
+                }
+                if (tag.type == Token.START) {
+                    // Nested anchors are split up by the tree builder.
+                    if (tag.tag.equals("a") && open.contains("a")) {
+                        return null;
+                    }
+                    open.push(tag.tag);
+                }
+            }
+
+            tokens.add(tag);
+            i = tag.end;
+        }
+
+        if (text.length() > 0) {
+            tokens.add(Token.text(text.toString()));
+        }
+
+        // Unclosed elements end with the comment.
+        while (!open.isEmpty()) {
+            tokens.add(Token.end(open.pop(), length));
+        }
+
+        return tokens;
+    }
+
+    @Nullable
+    private Token readStartTag(String html, int position) {
+        int length = html.length();
+        int p = position;
+        while (p < length && Character.isLetterOrDigit(html.charAt(p))) {
+            p++;
+        }
+        if (p == position || !Character.isLetter(html.charAt(position))) {
+            return null;
+        }
+        if (p < length && !isWhitespace(html.charAt(p))
+                && html.charAt(p) != '/' && html.charAt(p) != '>') {
+            return null;
+        }
+
+        String name = html.substring(position, p).toLowerCase(Locale.ENGLISH);
+        boolean isVoid = VOID_TAGS.contains(name);
+        if (!isVoid && !INLINE_TAGS.contains(name)) {
+            return null;
+        }
+
+        Attributes attributes = new Attributes();
+        while (true) {
+            p = skipWhitespace(html, p);
+            if (p >= length) {
+                return null;
+            }
+
+            char c = html.charAt(p);
+            if (c == '>') {
+                p++;
+                break;
+            }
+            if (c == '/') {
+                // Self closing is ignored for normal elements, the element stays open.
+                if (isVoid && p + 1 < length && html.charAt(p + 1) == '>') {
+                    p += 2;
+                    break;
+                }
+                return null;
+            }
+
+            int nameStart = p;
+            while (p < length && !isWhitespace(c = html.charAt(p))
+                    && c != '=' && c != '>' && c != '/' && c != '<' && c != '"' && c != '\'') {
+                p++;
+            }
+            if (p == nameStart) {
+                return null;
+            }
+            String attributeName = html.substring(nameStart, p).toLowerCase(Locale.ENGLISH);
+
+            String value = "";
+            p = skipWhitespace(html, p);
+            if (p < length && html.charAt(p) == '=') {
+                p = skipWhitespace(html, p + 1);
+                if (p >= length) {
+                    return null;
+                }
+
+                char quote = html.charAt(p);
+                if (quote == '"' || quote == '\'') {
+                    int valueEnd = html.indexOf(quote, p + 1);
+                    if (valueEnd < 0) {
+                        return null;
+                    }
+                    value = html.substring(p + 1, valueEnd);
+                    p = valueEnd + 1;
+                } else {
+                    int valueStart = p;
+                    while (p < length && !isWhitespace(c = html.charAt(p)) && c != '>') {
+                        p++;
+                    }
+                    value = html.substring(valueStart, p);
+                }
+
+                if (value.indexOf('&') >= 0) {
+                    value = Parser.unescapeEntities(value, true);
+                }
+            }
+
+            // The first one wins for duplicate attributes.
+            if (!attributes.hasKey(attributeName)) {
+                attributes.put(attributeName, value);
+            }
+        }
+
+        return isVoid ? Token.voidTag(name, attributes, p) : Token.start(name, attributes, p);
+    }
+
+    @Nullable
+    private Token readEndTag(String html, int position) {
+        int close = html.indexOf('>', position);
+        if (close < 0) {
+            return null;
+        }
+
+        String name = html.substring(position, close).trim().toLowerCase(Locale.ENGLISH);
+        return Token.end(name, close + 1);
+    }
+
+    private CharSequence emit(Theme theme, Post.Builder post, PostParser.Callback callback,
+                              List<Token> tokens) {
+        SpannableStringBuilder out = new SpannableStringBuilder();
+        Deque<OpenElement> open = new ArrayDeque<>();
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            switch (token.type) {
+                case Token.TEXT: {
+                    String text = decodeText(token.text);
+                    int start = out.length();
+                    out.append(text);
+                    CommentParserHelper.detectLinks(theme, post, text, out, start);
+                    break;
+                }
+                case Token.START: {
+                    Element element = new Element(Tag.valueOf(token.tag), "", token.attributes);
+                    open.push(new OpenElement(element, out.length()));
+                    break;
+                }
+                case Token.END: {
+                    OpenElement element = open.pop();
+                    CharSequence inner = out.subSequence(element.start, out.length());
+                    CharSequence result = commentParser.handleTag(callback, theme, post,
+                            token.tag, inner, element.element);
+                    // A null result keeps the inner text, like the Jsoup path does.
+                    if (result != null && result != inner) {
+                        replaceTail(out, element.start, result);
+                    }
+                    break;
+                }
+                case Token.VOID: {
+                    Element element = new Element(Tag.valueOf(token.tag), "", token.attributes);
+                    CharSequence result = commentParser.handleTag(callback, theme, post,
+                            token.tag, "", element);
+                    if (result != null) {
+                        out.append(result);
+                    }
+                    break;
+                }
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * Replace the text from start to the end with the result of a rule. The result already
+     * contains the spans of the text it was made from, if it kept them.
+     */
+    private void replaceTail(SpannableStringBuilder out, int start, CharSequence result) {
+        Object[] spans = out.getSpans(start, out.length(), Object.class);
+        for (Object span : spans) {
+            if (out.getSpanStart(span) >= start) {
+                out.removeSpan(span);
+            }
+        }
+
+        out.delete(start, out.length());
+        out.append(result);
+    }
+
+    /**
+     * Decode the text like a Jsoup TextNode, entities are unescaped and whitespace collapsed
+     * the same way {@code TextNode.text()} does.
+     */
+    private String decodeText(String raw) {
+        String text = raw.indexOf('&') >= 0 ? Parser.unescapeEntities(raw, false) : raw;
+        return StringUtil.normaliseWhitespace(text);
+    }
+
+    private static int skipWhitespace(String html, int position) {
+        while (position < html.length() && isWhitespace(html.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+    }
+
+    private static class OpenElement {
+        final Element element;
+        final int start;
+
+        OpenElement(Element element, int start) {
+            this.element = element;
+            this.start = start;
+        }
+    }
+
+    private static class Token {
+        static final int TEXT = 0;
+        static final int START = 1;
+        static final int END = 2;
+        static final int VOID = 3;
+
+        final int type;
+        final String tag;
+        final String text;
+        final Attributes attributes;
+        /**
+         * Index in the html after this token, for tags.
+         */
+        final int end;
+
+        private Token(int type, String tag, String text, Attributes attributes, int end) {
+            this.type = type;
+            this.tag = tag;
+            this.text = text;
+            this.attributes = attributes;
+            this.end = end;
+        }
+
+        static Token text(String text) {
+            return new Token(TEXT, null, text, null, -1);
+        }
+
+        static Token start(String tag, Attributes attributes, int end) {
+            return new Token(START, tag, null, attributes, end);
+        }
+
+        static Token end(String tag, int end) {
+            return new Token(END, tag, null, null, end);
+        }
+
+        static Token voidTag(String tag, Attributes attributes, int end) {
+            return new Token(VOID, tag, null, attributes, end);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.site.parser;
+
+import org.floens.chan.utils.Logger;
+
+import java.util.Locale;
+
+/**
+ * Time spent in each phase of a {@link ChanReaderRequest}. The timings of the last request are
+ * logged and shown in the developer settings.
+ */
+class ParseTimings {
+    private static final String TAG = "ParseTimings";
+
+    private static volatile ParseTimings last;
+
+    /**
+     * Until the response headers are received.
+     */
+    long network;
+    /**
+     * Reading the json, the posts are parsed concurrently during this.
+     */
+    long read;
+    /**
+     * Waiting for the posts that were not yet parsed when reading finished.
+     */
+    long parse;
+    /**
+     * Checking for deleted posts and building the replies.
+     */
+    long process;
+
+    int posts;
+    int chunks;
+
+    static String getLastSummary() {
+        ParseTimings timings = last;
+        return timings == null ? "No loads\n" : timings + "\n";
+    }
+
+    void publish(String url) {
+        last = this;
+        Logger.d(TAG, url + ": " + this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH,
+                "%d posts in %d chunks on %d threads, network %.1fms, read %.1fms, " +
+                        "parse %.1fms, process %.1fms",
+                posts, chunks, PostParseScheduler.PARALLELISM,
+                network / 1e6, read / 1e6, parse / 1e6, process / 1e6);
+    }
+}
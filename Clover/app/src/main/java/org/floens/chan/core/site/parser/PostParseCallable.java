@@ -18,11 +18,9 @@
 package org.floens.chan.core.site.parser;
 
 import org.floens.chan.core.database.DatabaseSavedReplyManager;
-import org.floens.chan.core.manager.FilterEngine;
+import org.floens.chan.core.manager.CompiledFilters;
 import org.floens.chan.core.model.Post;
-import org.floens.chan.core.model.orm.Filter;
 
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
 
@@ -31,24 +29,24 @@ import java.util.concurrent.Callable;
 class PostParseCallable implements Callable<Post> {
     private static final String TAG = "PostParseCallable";
 
-    private FilterEngine filterEngine;
-    private List<Filter> filters;
+    private CompiledFilters filters;
     private DatabaseSavedReplyManager savedReplyManager;
     private Post.Builder post;
     private ChanReader reader;
     private final Set<Integer> internalIds;
+    private final boolean deferComment;
 
-    public PostParseCallable(FilterEngine filterEngine,
-                             List<Filter> filters,
+    public PostParseCallable(CompiledFilters filters,
                              DatabaseSavedReplyManager savedReplyManager,
                              Post.Builder post,
-                             ChanReader reader, Set<Integer> internalIds) {
-        this.filterEngine = filterEngine;
+                             ChanReader reader, Set<Integer> internalIds,
+                             boolean deferComment) {
         this.filters = filters;
         this.savedReplyManager = savedReplyManager;
         this.post = post;
         this.reader = reader;
         this.internalIds = internalIds;
+        this.deferComment = deferComment;
     }
 
     @Override
@@ -58,7 +56,9 @@ class PostParseCallable implements Callable<Post> {
 
         post.isSavedReply(savedReplyManager.isSaved(post.board, post.id));
 
-        return reader.getParser().parse(null, post, new PostParser.Callback() {
+        post.rawPosterId(post.posterId);
+
+        PostParser.Callback callback = new PostParser.Callback() {
             @Override
             public boolean isSaved(int postNo) {
                 return savedReplyManager.isSaved(post.board, postNo);
@@ -68,27 +68,17 @@ class PostParseCallable implements Callable<Post> {
             public boolean isInternal(int postNo) {
                 return internalIds.contains(postNo);
             }
-        });
+        };
+
+        if (deferComment) {
+            return reader.getParser().parseDeferred(null, post, callback);
+        } else {
+            return reader.getParser().parse(null, post, callback);
+        }
     }
 
     private void processPostFilter(Post.Builder post) {
-        int filterSize = filters.size();
-        for (int i = 0; i < filterSize; i++) {
-            Filter filter = filters.get(i);
-            if (filterEngine.matches(filter, post)) {
-                FilterEngine.FilterAction action = FilterEngine.FilterAction.forId(filter.action);
-                switch (action) {
-                    case COLOR:
-                        post.filter(filter.color, false, false);
-                        break;
-                    case HIDE:
-                        post.filter(0, true, false);
-                        break;
-                    case REMOVE:
-                        post.filter(0, false, true);
-                        break;
-                }
-            }
-        }
+        CompiledFilters.Result result = filters.filter(post);
+        post.filter(result.highlightedColor, result.stub, result.remove);
     }
 }
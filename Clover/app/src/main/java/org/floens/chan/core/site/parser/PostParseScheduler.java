@@ -0,0 +1,122 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.site.parser;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.WorkerThread;
+
+import org.floens.chan.core.model.Post;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the {@link PostParseCallable}s of one request in chunks on a shared pool.
+ * <p>
+ * Posts arrive one by one while the json is read. They are grouped into chunks that start small,
+ * so that parsing starts right away, and double in size up to {@link #MAX_CHUNK_SIZE}, so that
+ * a thread with thousands of posts needs only a few dozen hand-offs. Idle workers take the next
+ * chunk from the queue, which balances chunks of uneven cost without task stealing.
+ * <p>
+ * The pool leaves a core free for the network and main threads.
+ */
+class PostParseScheduler {
+    static final int PARALLELISM =
+            Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+
+    private static final int MIN_CHUNK_SIZE = 8;
+    private static final int MAX_CHUNK_SIZE = 128;
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            PARALLELISM, PARALLELISM, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+
+    private final List<Future<List<Post>>> chunks = new ArrayList<>();
+    private List<PostParseCallable> pending = new ArrayList<>(MIN_CHUNK_SIZE);
+    private int chunkSize = MIN_CHUNK_SIZE;
+
+    /**
+     * Add a post to parse, called from the reading thread.
+     */
+    @WorkerThread
+    void add(PostParseCallable callable) {
+        pending.add(callable);
+        if (pending.size() >= chunkSize) {
+            submitPending();
+            chunkSize = Math.min(chunkSize * 2, MAX_CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * Wait for all posts to be parsed.
+     *
+     * @return the parsed posts in the order they were added, filtered posts removed.
+     */
+    @WorkerThread
+    List<Post> finish() throws InterruptedException, ExecutionException {
+        if (!pending.isEmpty()) {
+            submitPending();
+        }
+
+        List<Post> posts = new ArrayList<>();
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                posts.addAll(chunks.get(i).get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            cancel();
+            throw e;
+        }
+        return posts;
+    }
+
+    @AnyThread
+    void cancel() {
+        for (int i = 0; i < chunks.size(); i++) {
+            chunks.get(i).cancel(true);
+        }
+    }
+
+    int getChunkCount() {
+        return chunks.size();
+    }
+
+    private void submitPending() {
+        final List<PostParseCallable> chunk = pending;
+        pending = new ArrayList<>(Math.min(chunkSize * 2, MAX_CHUNK_SIZE));
+
+        chunks.add(EXECUTOR.submit(() -> {
+            List<Post> parsed = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+
+                Post post = chunk.get(i).call();
+                if (post != null) {
+                    parsed.add(post);
+                }
+            }
+            return parsed;
+        }));
+    }
+}
@@ -23,6 +23,15 @@ import org.floens.chan.ui.theme.Theme;
 public interface PostParser {
     Post parse(Theme theme, Post.Builder builder, Callback callback);
 
+    /**
+     * Like {@link #parse(Theme, Post.Builder, Callback)}, but building the rich comment may be
+     * deferred until the post is shown, see {@link Post#parseDeferredComment()}. The replies of
+     * the post are still known right away.
+     */
+    default Post parseDeferred(Theme theme, Post.Builder builder, Callback callback) {
+        return parse(theme, builder, callback);
+    }
+
     interface Callback {
         boolean isSaved(int postNo);
 
@@ -202,6 +202,16 @@ public class Chan4 extends SiteBase {
                     .build();
         }
 
+        @Override
+        public HttpUrl threadTail(Board board, Loadable loadable) {
+            return a.newBuilder()
+                    .addPathSegment(board.code)
+                    .addPathSegment("thread")
+                    .addPathSegment(loadable.no + "-tail.json")
+                    .addQueryParameter("t", String.valueOf(System.currentTimeMillis()))
+                    .build();
+        }
+
         @Override
         public HttpUrl imageUrl(Post.Builder post, Map<String, String> arg) {
             return i.newBuilder()
@@ -26,8 +26,10 @@ import androidx.recyclerview.widget.RecyclerView;
 import org.floens.chan.R;
 import org.floens.chan.core.model.ChanThread;
 import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.PostIndex;
 import org.floens.chan.core.model.orm.Loadable;
 import org.floens.chan.core.settings.ChanSettings;
+import org.floens.chan.core.site.parser.CommentParseQueue;
 import org.floens.chan.ui.cell.PostCellInterface;
 import org.floens.chan.ui.cell.ThreadStatusCell;
 
@@ -47,6 +49,8 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     private final ThreadStatusCell.Callback statusCellCallback;
     private final List<Post> sourceList = new ArrayList<>();
     private final List<Post> displayList = new ArrayList<>();
+    // Post no to position in the displayList, after the PostsFilter.
+    private PostIndex displayIndex = PostIndex.EMPTY;
     private String error = null;
     private Post highlightedPost;
     private String highlightedPostId;
@@ -106,6 +110,10 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
             case TYPE_POST_STUB:
                 PostViewHolder postViewHolder = (PostViewHolder) holder;
                 Post post = displayList.get(getPostPosition(position));
+                if (!post.isCommentParsed()) {
+                    // Bound with the placeholder comment, rebind once the comment is parsed.
+                    CommentParseQueue.request(post, () -> notifyPostChanged(post));
+                }
                 boolean highlight = post == highlightedPost || post.id.equals(highlightedPostId) || post.no == highlightedPostNo ||
                         post.tripcode.equals(highlightedPostTripcode);
                 postViewHolder.postView.setPost(null,
@@ -151,7 +159,7 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
             return TYPE_STATUS;
         } else {
             Post post = displayList.get(getPostPosition(position));
-            if (post.filterStub) {
+            if (post.isFilterStub()) {
                 return TYPE_POST_STUB;
             } else {
                 return TYPE_POST;
@@ -168,10 +176,7 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
             return -2;
         } else {
             Post post = displayList.get(getPostPosition(position));
-            int repliesFromSize;
-            synchronized (post.repliesFrom) {
-                repliesFromSize = post.repliesFrom.size();
-            }
+            int repliesFromSize = post.getRepliesFromCount();
             return ((long) repliesFromSize << 32L) + (long) post.no + (compact ? 1L : 0L);
         }
     }
@@ -185,16 +190,14 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
         displayList.clear();
         displayList.addAll(filter.apply(sourceList));
+        displayIndex = PostIndex.build(displayIndex, displayList);
 
         lastSeenIndicatorPosition = -1;
         if (thread.loadable.lastViewed >= 0) {
             // Do not process the last post, the indicator does not have to appear at the bottom
-            for (int i = 0, displayListSize = displayList.size() - 1; i < displayListSize; i++) {
-                Post post = displayList.get(i);
-                if (post.no == thread.loadable.lastViewed) {
-                    lastSeenIndicatorPosition = i + 1;
-                    break;
-                }
+            int lastViewedPosition = displayIndex.indexOf(thread.loadable.lastViewed);
+            if (lastViewedPosition >= 0 && lastViewedPosition < displayList.size() - 1) {
+                lastSeenIndicatorPosition = lastViewedPosition + 1;
             }
         }
 
@@ -202,10 +205,33 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         notifyDataSetChanged();
     }
 
+    /**
+     * Bind the posts again, for the ones that are in the display list.
+     */
+    public void updatePosts(List<Post> posts) {
+        for (int i = 0; i < posts.size(); i++) {
+            notifyPostChanged(posts.get(i));
+        }
+    }
+
+    private void notifyPostChanged(Post post) {
+        int index = displayIndex.indexOf(post.no);
+        if (index >= 0 && displayList.get(index) == post) {
+            notifyItemChanged(getScrollPosition(index));
+        }
+    }
+
     public List<Post> getDisplayList() {
         return displayList;
     }
 
+    /**
+     * The position of the post in the display list, or -1 if it is not displayed.
+     */
+    public int getDisplayPosition(int postNo) {
+        return displayIndex.indexOf(postNo);
+    }
+
     public void cleanup() {
         highlightedPost = null;
         highlightedPostId = null;
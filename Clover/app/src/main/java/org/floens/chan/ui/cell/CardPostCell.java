@@ -209,9 +209,9 @@ public class CardPostCell extends CardView implements PostCellInterface, View.On
             thumbnailView.setPostImage(null, 0, 0);
         }
 
-        if (post.filterHighlightedColor != 0) {
+        if (post.getFilterHighlightedColor() != 0) {
             filterMatchColor.setVisibility(View.VISIBLE);
-            filterMatchColor.setBackgroundColor(post.filterHighlightedColor);
+            filterMatchColor.setBackgroundColor(post.getFilterHighlightedColor());
         } else {
             filterMatchColor.setVisibility(View.GONE);
         }
@@ -225,10 +225,10 @@ public class CardPostCell extends CardView implements PostCellInterface, View.On
         }
 
         CharSequence commentText;
-        if (post.comment.length() > COMMENT_MAX_LENGTH) {
-            commentText = post.comment.subSequence(0, COMMENT_MAX_LENGTH);
+        if (post.getComment().length() > COMMENT_MAX_LENGTH) {
+            commentText = post.getComment().subSequence(0, COMMENT_MAX_LENGTH);
         } else {
-            commentText = post.comment;
+            commentText = post.getComment();
         }
 
         comment.setText(commentText);
@@ -183,12 +183,7 @@ public class PostCell extends LinearLayout implements PostCellInterface {
             if (replies.getVisibility() != VISIBLE || !threadMode) {
                 return;
             }
-            int repliesFromSize;
-            synchronized (post.repliesFrom) {
-                repliesFromSize = post.repliesFrom.size();
-            }
-
-            if (repliesFromSize > 0) {
+            if (post.getRepliesFromCount() > 0) {
                 callback.onShowPostReplies(post);
             }
         };
@@ -335,9 +330,9 @@ public class PostCell extends LinearLayout implements PostCellInterface {
             setBackgroundResource(R.drawable.item_background);
         }
 
-        if (post.filterHighlightedColor != 0) {
+        if (post.getFilterHighlightedColor() != 0) {
             filterMatchColor.setVisibility(View.VISIBLE);
-            filterMatchColor.setBackgroundColor(post.filterHighlightedColor);
+            filterMatchColor.setBackgroundColor(post.getFilterHighlightedColor());
         } else {
             filterMatchColor.setVisibility(View.GONE);
         }
@@ -422,10 +417,10 @@ public class PostCell extends LinearLayout implements PostCellInterface {
         icons.apply();
 
         CharSequence commentText;
-        if (!threadMode && post.comment.length() > COMMENT_MAX_LENGTH_BOARD) {
+        if (!threadMode && post.getComment().length() > COMMENT_MAX_LENGTH_BOARD) {
             commentText = truncatePostComment(post, COMMENT_MAX_LENGTH_BOARD);
         } else {
-            commentText = post.comment;
+            commentText = post.getComment();
         }
 
         if (ChanSettings.layoutTextBelowThumbnails.get()) {
@@ -546,10 +541,7 @@ public class PostCell extends LinearLayout implements PostCellInterface {
             title.setMovementMethod(null);
         }
 
-        int repliesFromSize;
-        synchronized (post.repliesFrom) {
-            repliesFromSize = post.repliesFrom.size();
-        }
+        int repliesFromSize = post.getRepliesFromCount();
 
         if ((!threadMode && post.getReplies() > 0) || (repliesFromSize > 0)) {
             replies.setVisibility(View.VISIBLE);
@@ -629,8 +621,8 @@ public class PostCell extends LinearLayout implements PostCellInterface {
     }
 
     private void setPostLinkableListener(Post post, boolean bind) {
-        if (post.comment instanceof Spanned) {
-            Spanned commentSpanned = (Spanned) post.comment;
+        if (post.getComment() instanceof Spanned) {
+            Spanned commentSpanned = (Spanned) post.getComment();
             PostLinkable[] linkables = commentSpanned.getSpans(0, commentSpanned.length(), PostLinkable.class);
             for (PostLinkable linkable : linkables) {
                 linkable.setMarkedNo(bind ? markedNo : -1);
@@ -647,10 +639,10 @@ public class PostCell extends LinearLayout implements PostCellInterface {
 
     private CharSequence truncatePostComment(Post post, int maxCommentLength) {
         BreakIterator bi = BreakIterator.getWordInstance();
-        bi.setText(post.comment.toString());
+        bi.setText(post.getComment().toString());
         int precedingBoundary = bi.following(maxCommentLength);
         // Fallback to old method in case the comment does not have any spaces/individual words
-        CharSequence commentText = precedingBoundary > 0 ? post.comment.subSequence(0, precedingBoundary) : post.comment.subSequence(0, maxCommentLength);
+        CharSequence commentText = precedingBoundary > 0 ? post.getComment().subSequence(0, precedingBoundary) : post.getComment().subSequence(0, maxCommentLength);
         return TextUtils.concat(commentText, "\u2026"); // append ellipsis
     }
 
@@ -188,14 +188,14 @@ public class PostStubCell extends RelativeLayout implements PostCellInterface, V
     private void bindPost(Theme theme, Post post) {
         bound = true;
 
-        if (!TextUtils.isEmpty(post.subjectSpan)) {
-            title.setText(post.subjectSpan);
+        if (!TextUtils.isEmpty(post.subject)) {
+            title.setText(post.subject);
         } else {
             CharSequence titleText;
-            if (post.comment.length() > TITLE_MAX_LENGTH) {
-                titleText = post.comment.subSequence(0, TITLE_MAX_LENGTH);
+            if (post.getComment().length() > TITLE_MAX_LENGTH) {
+                titleText = post.getComment().subSequence(0, TITLE_MAX_LENGTH);
             } else {
-                titleText = post.comment;
+                titleText = post.getComment();
             }
             title.setText(titleText);
         }
@@ -156,6 +156,11 @@ public class BehaviourSettingsController extends SettingsController {
                     ChanSettings.openLinkBrowser,
                     R.string.setting_open_link_browser, 0));
 
+            post.add(new BooleanSettingView(this,
+                    ChanSettings.lazyCommentParsing,
+                    R.string.setting_lazy_comment_parsing,
+                    R.string.setting_lazy_comment_parsing_description));
+
             groups.add(post);
         }
 
@@ -30,16 +30,23 @@ import android.widget.TextView;
 
 import org.floens.chan.R;
 import org.floens.chan.controller.Controller;
+import org.floens.chan.core.cache.FileCache;
 import org.floens.chan.core.database.DatabaseManager;
+import org.floens.chan.core.site.parser.ChanReaderRequest;
 
 import javax.inject.Inject;
 
 public class DeveloperSettingsController extends Controller {
     private TextView summaryText;
+    private TextView downloadSummaryText;
+    private TextView parseSummaryText;
 
     @Inject
     DatabaseManager databaseManager;
 
+    @Inject
+    FileCache fileCache;
+
     public DeveloperSettingsController(Context context) {
         super(context);
     }
@@ -95,6 +102,18 @@ public class DeveloperSettingsController extends Controller {
         resetDbButton.setText("Delete database");
         wrapper.addView(resetDbButton);
 
+        downloadSummaryText = new TextView(context);
+        downloadSummaryText.setPadding(0, dp(25), 0, 0);
+        wrapper.addView(downloadSummaryText);
+
+        setDownloadSummary();
+
+        parseSummaryText = new TextView(context);
+        parseSummaryText.setPadding(0, dp(25), 0, 0);
+        wrapper.addView(parseSummaryText);
+
+        setParseSummary();
+
         ScrollView scrollView = new ScrollView(context);
         scrollView.addView(wrapper);
         view = scrollView;
@@ -107,4 +126,18 @@ public class DeveloperSettingsController extends Controller {
         dbSummary += databaseManager.getSummary();
         summaryText.setText(dbSummary);
     }
+
+    private void setDownloadSummary() {
+        String downloadSummary = "";
+        downloadSummary += "Download summary:\n";
+        downloadSummary += fileCache.getDownloadSummary();
+        downloadSummaryText.setText(downloadSummary);
+    }
+
+    private void setParseSummary() {
+        String parseSummary = "";
+        parseSummary += "Last thread load:\n";
+        parseSummary += ChanReaderRequest.getTimingsSummary();
+        parseSummaryText.setText(parseSummary);
+    }
 }
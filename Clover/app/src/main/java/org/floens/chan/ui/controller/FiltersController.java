@@ -144,18 +144,25 @@ public class FiltersController extends Controller implements
             //if every filter is disabled, enable all of them and set the drawable to be an x
             //if every filter is enabled, disable all of them and set the drawable to be a checkmark
             //if some filters are enabled, disable them and set the drawable to be a checkmark
-            List<Filter> enabledFilters = filterEngine.getEnabledFilters();
-            List<Filter> allFilters = filterEngine.getAllFilters();
-            if (enabledFilters.isEmpty()) {
-                setFilters(allFilters, true);
-                enableButton.setImageResource(R.drawable.ic_clear_white_24dp);
-            } else if (enabledFilters.size() == allFilters.size()) {
-                setFilters(allFilters, false);
-                enableButton.setImageResource(R.drawable.ic_done_white_24dp);
-            } else {
-                setFilters(enabledFilters, false);
-                enableButton.setImageResource(R.drawable.ic_done_white_24dp);
-            }
+            filterEngine.getAllFiltersAsync(allFilters -> {
+                List<Filter> enabledFilters = new ArrayList<>();
+                for (Filter filter : allFilters) {
+                    if (filter.enabled) {
+                        enabledFilters.add(filter);
+                    }
+                }
+
+                if (enabledFilters.isEmpty()) {
+                    setFilters(allFilters, true);
+                    enableButton.setImageResource(R.drawable.ic_clear_white_24dp);
+                } else if (enabledFilters.size() == allFilters.size()) {
+                    setFilters(allFilters, false);
+                    enableButton.setImageResource(R.drawable.ic_done_white_24dp);
+                } else {
+                    setFilters(enabledFilters, false);
+                    enableButton.setImageResource(R.drawable.ic_done_white_24dp);
+                }
+            });
         }
     }
 
@@ -180,7 +187,7 @@ public class FiltersController extends Controller implements
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
                         filterEngine.createOrUpdateFilter(filterLayout.getFilter());
-                        if (filterEngine.getEnabledFilters().isEmpty()) {
+                        if (filterEngine.getFilterSnapshot().isEmpty()) {
                             enable.setImageResource(R.drawable.ic_done_white_24dp);
                         } else {
                             enable.setImageResource(R.drawable.ic_clear_white_24dp);
@@ -272,10 +279,13 @@ public class FiltersController extends Controller implements
         }
 
         private void load() {
-            sourceList.clear();
-            sourceList.addAll(databaseManager.runTask(databaseManager.getDatabaseFilterManager().getFilters()));
+            databaseManager.runTaskAsync(databaseManager.getDatabaseFilterManager().getFilters(),
+                    filters -> {
+                        sourceList.clear();
+                        sourceList.addAll(filters);
 
-            filter();
+                        filter();
+                    });
         }
 
         private void filter() {
@@ -33,6 +33,7 @@ import org.floens.chan.R;
 import org.floens.chan.core.presenter.StorageSetupPresenter;
 import org.floens.chan.core.settings.ChanSettings;
 import org.floens.chan.ui.settings.BooleanSettingView;
+import org.floens.chan.ui.settings.IntegerSettingView;
 import org.floens.chan.ui.settings.LinkSettingView;
 import org.floens.chan.ui.settings.ListSettingView;
 import org.floens.chan.ui.settings.SettingView;
@@ -183,6 +184,17 @@ public class MediaSettingsController extends SettingsController implements
                     R.string.setting_video_auto_loop,
                     R.string.setting_video_auto_loop_description));
 
+            loading.add(new IntegerSettingView(this,
+                    ChanSettings.segmentedDownloadMinSizeKb,
+                    R.string.setting_segmented_download_min_size,
+                    R.string.setting_segmented_download_min_size,
+                    R.string.setting_segmented_download_min_size_description));
+
+            loading.add(new BooleanSettingView(this,
+                    ChanSettings.http2Downloads,
+                    R.string.setting_http2_downloads,
+                    R.string.setting_http2_downloads_description));
+
             groups.add(loading);
         }
     }
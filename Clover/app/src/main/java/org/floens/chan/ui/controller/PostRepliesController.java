@@ -38,6 +38,7 @@ import org.floens.chan.core.model.Post;
 import org.floens.chan.core.model.PostImage;
 import org.floens.chan.core.presenter.ThreadPresenter;
 import org.floens.chan.core.settings.ChanSettings;
+import org.floens.chan.core.site.parser.CommentParseQueue;
 import org.floens.chan.ui.cell.PostCellInterface;
 import org.floens.chan.ui.helper.PostPopupHelper;
 import org.floens.chan.ui.view.LoadView;
@@ -215,6 +216,9 @@ public class PostRepliesController extends Controller {
                 }
 
                 final Post p = getItem(position);
+                if (!p.isCommentParsed()) {
+                    CommentParseQueue.request(p, this::notifyDataSetChanged);
+                }
                 boolean showDivider = position < getCount() - 1;
                 postCell.setPost(null,
                         p,
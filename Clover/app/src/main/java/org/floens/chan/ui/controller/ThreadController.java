@@ -136,7 +136,11 @@ public abstract class ThreadController extends Controller implements
     }
 
     public void onEvent(RefreshUIMessage message) {
-        threadLayout.getPresenter().requestData();
+        if ("filters".equals(message.reason)) {
+            threadLayout.getPresenter().onFiltersChanged();
+        } else {
+            threadLayout.getPresenter().requestData();
+        }
     }
 
     @Override
@@ -79,6 +79,17 @@ public class PostPopupHelper {
         return presentingController.getPostRepliesData();
     }
 
+    public int getDisplayPosition(int postNo) {
+        // Only a handful of posts in a popup, not worth an index.
+        List<Post> posts = getDisplayingPosts();
+        for (int i = 0; i < posts.size(); i++) {
+            if (posts.get(i).no == postNo) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     public void scrollTo(int displayPosition, boolean smooth) {
         presentingController.scrollTo(displayPosition, smooth);
     }
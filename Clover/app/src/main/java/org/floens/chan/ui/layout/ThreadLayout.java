@@ -249,6 +249,11 @@ public class ThreadLayout extends CoordinatorLayout implements
         callback.onShowPosts();
     }
 
+    @Override
+    public void updatePosts(List<Post> posts) {
+        threadListLayout.updatePosts(posts);
+    }
+
     @Override
     public void postClicked(Post post) {
         if (postPopupHelper.isOpen()) {
@@ -287,7 +292,7 @@ public class ThreadLayout extends CoordinatorLayout implements
     }
 
     public void showPostLinkables(final Post post) {
-        final List<PostLinkable> linkables = post.linkables;
+        final List<PostLinkable> linkables = post.getLinkables();
         String[] keys = new String[linkables.size()];
         for (int i = 0; i < linkables.size(); i++) {
             keys[i] = linkables.get(i).key.toString();
@@ -305,7 +310,7 @@ public class ThreadLayout extends CoordinatorLayout implements
 
     public void clipboardPost(Post post) {
         ClipboardManager clipboard = (ClipboardManager) AndroidUtils.getAppContext().getSystemService(Context.CLIPBOARD_SERVICE);
-        ClipData clip = ClipData.newPlainText("Post text", post.comment.toString());
+        ClipData clip = ClipData.newPlainText("Post text", post.getComment().toString());
         clipboard.setPrimaryClip(clip);
         Toast.makeText(getContext(), R.string.post_text_copied, Toast.LENGTH_SHORT).show();
     }
@@ -365,6 +370,15 @@ public class ThreadLayout extends CoordinatorLayout implements
         }
     }
 
+    @Override
+    public int getDisplayPosition(int postNo) {
+        if (postPopupHelper.isOpen()) {
+            return postPopupHelper.getDisplayPosition(postNo);
+        } else {
+            return threadListLayout.getDisplayPosition(postNo);
+        }
+    }
+
     @Override
     public int[] getCurrentPosition() {
         return threadListLayout.getIndexAndTop();
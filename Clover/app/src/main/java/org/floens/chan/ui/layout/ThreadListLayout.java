@@ -447,6 +447,14 @@ public class ThreadListLayout extends FrameLayout implements ReplyLayout.ReplyLa
         return postAdapter.getDisplayList();
     }
 
+    public void updatePosts(List<Post> posts) {
+        postAdapter.updatePosts(posts);
+    }
+
+    public int getDisplayPosition(int postNo) {
+        return postAdapter.getDisplayPosition(postNo);
+    }
+
     public ThumbnailView getThumbnail(PostImage postImage) {
         RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
 
@@ -138,8 +138,8 @@ public class ThreadWatchNotifications extends NotificationHelper {
 
         for (Post post : unviewedPosts) {
             String comment = post.image() != null ? POST_COMMENT_IMAGE_PREFIX : "";
-            if (post.comment.length() > 0) {
-                comment += post.comment;
+            if (post.getComment().length() > 0) {
+                comment += post.getComment();
             }
 
             // Replace >>132456798 with >6789 to shorten the notification
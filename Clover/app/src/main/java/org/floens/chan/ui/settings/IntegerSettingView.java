@@ -38,15 +38,25 @@ import org.floens.chan.core.settings.Setting;
 public class IntegerSettingView extends SettingView implements View.OnClickListener {
     private final Setting<Integer> setting;
     private final String dialogTitle;
+    private final String description;
 
     public IntegerSettingView(SettingsController settingsController, Setting<Integer> setting, int name, int dialogTitle) {
         this(settingsController, setting, getString(name), getString(dialogTitle));
     }
 
+    public IntegerSettingView(SettingsController settingsController, Setting<Integer> setting, int name, int dialogTitle, int description) {
+        this(settingsController, setting, getString(name), getString(dialogTitle), getString(description));
+    }
+
     public IntegerSettingView(SettingsController settingsController, Setting<Integer> setting, String name, String dialogTitle) {
+        this(settingsController, setting, name, dialogTitle, null);
+    }
+
+    public IntegerSettingView(SettingsController settingsController, Setting<Integer> setting, String name, String dialogTitle, String description) {
         super(settingsController, name);
         this.setting = setting;
         this.dialogTitle = dialogTitle;
+        this.description = description;
     }
 
     @Override
@@ -57,7 +67,11 @@ public class IntegerSettingView extends SettingView implements View.OnClickListe
 
     @Override
     public String getBottomDescription() {
-        return setting.get() != null ? setting.get().toString() : null;
+        String value = setting.get() != null ? setting.get().toString() : null;
+        if (description == null) {
+            return value;
+        }
+        return value != null ? value + "\n" + description : description;
     }
 
     @Override
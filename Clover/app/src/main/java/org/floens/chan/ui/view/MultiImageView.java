@@ -61,6 +61,7 @@ import com.google.android.exoplayer2.util.Util;
 
 import org.floens.chan.R;
 import org.floens.chan.core.cache.FileCache;
+import org.floens.chan.core.cache.FileCacheDataSource;
 import org.floens.chan.core.cache.FileCacheDownloader;
 import org.floens.chan.core.cache.FileCacheListener;
 import org.floens.chan.core.cache.FileCacheProvider;
@@ -162,13 +163,13 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener,
                             setThumbnail(postImage.getThumbnailUrl().toString(), center);
                             break;
                         case BIGIMAGE:
-                            setBigImage(postImage.imageUrl.toString());
+                            setBigImage(postImage);
                             break;
                         case GIF:
-                            setGif(postImage.imageUrl.toString());
+                            setGif(postImage);
                             break;
                         case MOVIE:
-                            setVideo(postImage.imageUrl.toString());
+                            setVideo(postImage);
                             break;
                         case OTHER:
                             setOther(postImage.imageUrl.toString());
@@ -287,7 +288,7 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener,
         }
     }
 
-    private void setBigImage(String imageUrl) {
+    private void setBigImage(PostImage postImage) {
         if (getWidth() == 0 || getHeight() == 0) {
             Logger.e(TAG, "getWidth() or getHeight() returned 0, not loading big image");
             return;
@@ -298,7 +299,7 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener,
         }
 
         callback.showProgress(this, true);
-        bigImageRequest = fileCache.downloadFile(imageUrl, new FileCacheListener() {
+        bigImageRequest = fileCache.downloadFile(postImage, new FileCacheListener() {
             @Override
             public void onProgress(long downloaded, long total) {
                 callback.onProgress(MultiImageView.this, downloaded, total);
@@ -334,7 +335,7 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener,
         setBitImageFileInternal(file, true, Mode.BIGIMAGE);
     }
 
-    private void setGif(String gifUrl) {
+    private void setGif(PostImage postImage) {
         if (getWidth() == 0 || getHeight() == 0) {
             Logger.e(TAG, "getWidth() or getHeight() returned 0, not loading");
             return;
@@ -345,7 +346,7 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener,
         }
 
         callback.showProgress(this, true);
-        gifRequest = fileCache.downloadFile(gifUrl, new FileCacheListener() {
+        gifRequest = fileCache.downloadFile(postImage, new FileCacheListener() {
             @Override
             public void onProgress(long downloaded, long total) {
                 callback.onProgress(MultiImageView.this, downloaded, total);
@@ -408,13 +409,13 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener,
         onModeLoaded(Mode.GIF, view);
     }
 
-    private void setVideo(String videoUrl) {
+    private void setVideo(PostImage postImage) {
         if (videoRequest != null) {
             return;
         }
 
         callback.showProgress(this, true);
-        videoRequest = fileCache.downloadFile(videoUrl, new FileCacheListener() {
+        videoRequest = fileCache.downloadFile(postImage, new FileCacheListener() {
             @Override
             public void onProgress(long downloaded, long total) {
                 callback.onProgress(MultiImageView.this, downloaded, total);
@@ -422,6 +423,11 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener,
 
             @Override
             public void onSuccess(File file) {
+                // Already playing from the stream.
+                if (exoPlayer != null) {
+                    return;
+                }
+
                 if (!hasContent || mode == Mode.MOVIE) {
                     setVideoFile(file);
                 }
@@ -446,6 +452,20 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener,
                 callback.showProgress(MultiImageView.this, false);
             }
         });
+
+        // Not in the cache yet, start playing while it downloads.
+        if (videoRequest != null && !ChanSettings.videoOpenExternal.get() &&
+                ChanSettings.videoUseExoplayer.get() && (!hasContent || mode == Mode.MOVIE)) {
+            setVideoStream(postImage.imageUrl.toString(), videoRequest);
+        }
+    }
+
+    private void setVideoStream(String videoUrl, FileCacheDownloader downloader) {
+        MediaSource videoSource = new ExtractorMediaSource.Factory(
+                () -> new FileCacheDataSource(downloader))
+                .createMediaSource(android.net.Uri.parse(videoUrl));
+
+        setExoPlayerSource(videoSource);
     }
 
     private void setOther(String fileUrl) {
@@ -462,24 +482,12 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener,
 
             onModeLoaded(Mode.MOVIE, videoView);
         } else if (ChanSettings.videoUseExoplayer.get()) {
-            exoVideoView = new PlayerView(getContext());
-            exoPlayer = ExoPlayerFactory.newSimpleInstance(getContext());
-            exoVideoView.setPlayer(exoPlayer);
             DataSource.Factory dataSourceFactory = new DefaultDataSourceFactory(getContext(),
                     Util.getUserAgent(getContext(), userAgent.getUserAgent()));
             MediaSource videoSource = new ExtractorMediaSource.Factory(dataSourceFactory)
                     .createMediaSource(android.net.Uri.fromFile(file));
 
-            exoPlayer.setRepeatMode(ChanSettings.videoAutoLoop.get() ?
-                    Player.REPEAT_MODE_ALL : Player.REPEAT_MODE_OFF);
-
-            exoPlayer.prepare(videoSource);
-            exoPlayer.addAudioListener(this);
-
-            addView(exoVideoView);
-            exoPlayer.setPlayWhenReady(true);
-            onModeLoaded(Mode.MOVIE, exoVideoView);
-            callback.onVideoLoaded(this);
+            setExoPlayerSource(videoSource);
         } else {
             Context proxyContext = new NoMusicServiceCommandContext(getContext());
 
@@ -521,6 +529,23 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener,
         }
     }
 
+    private void setExoPlayerSource(MediaSource videoSource) {
+        exoVideoView = new PlayerView(getContext());
+        exoPlayer = ExoPlayerFactory.newSimpleInstance(getContext());
+        exoVideoView.setPlayer(exoPlayer);
+
+        exoPlayer.setRepeatMode(ChanSettings.videoAutoLoop.get() ?
+                Player.REPEAT_MODE_ALL : Player.REPEAT_MODE_OFF);
+
+        exoPlayer.prepare(videoSource);
+        exoPlayer.addAudioListener(this);
+
+        addView(exoVideoView);
+        exoPlayer.setPlayWhenReady(true);
+        onModeLoaded(Mode.MOVIE, exoVideoView);
+        callback.onVideoLoaded(this);
+    }
+
     @Override
     public void onAudioSessionId(int audioSessionId) {
         if (exoPlayer.getAudioFormat() == null) {
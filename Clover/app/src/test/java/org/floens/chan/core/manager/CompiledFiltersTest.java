@@ -0,0 +1,229 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import android.app.Application;
+
+import org.floens.chan.core.database.DatabaseManager;
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.orm.Filter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link CompiledFilters} must match the same filters as running
+ * {@link FilterEngine#matches(Filter, Post.Builder)} with the regex of every filter.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, application = Application.class)
+public class CompiledFiltersTest {
+    private static final int REGEX_TYPES = FilterType.COMMENT.flag | FilterType.SUBJECT.flag;
+
+    private static final String[] PATTERNS = {
+            // Words, matched with \b on both sides.
+            "cat",
+            "c++",
+            "spam eggs",
+            "a  b",
+            // Wildcards, the literal is the longest part between them.
+            "foo*bar",
+            "*ing",
+            "un*",
+            "*",
+            // Phrases, without word boundaries.
+            "\"hello world\"",
+            "\"at\"",
+            "\"\"",
+            // Regexes, without literals.
+            "/ab+c/",
+            "/Dog/i",
+            "/dog/",
+            "/(x)\\1/",
+            "/\\Qa.b\\E/",
+            "/\\bword\\b/i",
+            "/[/",
+    };
+
+    private static final String[] TEXTS = {
+            "",
+            "cat",
+            "the cat sat",
+            "CAT!",
+            "concatenate",
+            "cats",
+            "c++17",
+            "c++ rocks",
+            "spam",
+            "EGGS and ham",
+            "a b",
+            "foobar",
+            "FooXbar",
+            "foo bar",
+            "food bars",
+            "singing",
+            "sing",
+            "ing",
+            "undo",
+            "fun",
+            "hello world",
+            "HELLO WORLD!",
+            "hello  world",
+            "that",
+            "abbbc",
+            "ac",
+            "Dog",
+            "dog",
+            "xx",
+            "x x",
+            "a.b",
+            "axb",
+            "word",
+            "Words",
+            "a word.",
+            "h\u00e9llo w\u00f6rld",
+            "\u00c9T\u00c9 cat",
+    };
+
+    private FilterEngine filterEngine;
+
+    @Before
+    public void setUp() {
+        filterEngine = new FilterEngine(mock(DatabaseManager.class), mock(BoardManager.class));
+    }
+
+    @Test
+    public void regexFieldsMatchLikeRegex() {
+        List<Filter> filters = new ArrayList<>();
+        for (String pattern : PATTERNS) {
+            filters.add(filter(REGEX_TYPES, pattern));
+        }
+        CompiledFilters compiled = new CompiledFilters(filterEngine, filters);
+
+        for (String subject : TEXTS) {
+            for (String comment : TEXTS) {
+                assertSameMatches(compiled, filters, post(subject, comment));
+            }
+        }
+    }
+
+    @Test
+    public void singleFieldFilters() {
+        List<Filter> filters = Arrays.asList(
+                filter(FilterType.COMMENT.flag, "cat"),
+                filter(FilterType.SUBJECT.flag, "cat"),
+                filter(FilterType.COMMENT.flag, "/dog/"),
+                filter(FilterType.SUBJECT.flag, "/Dog/i"),
+                filter(FilterType.COMMENT.flag | FilterType.NAME.flag, "Anonymous"));
+        CompiledFilters compiled = new CompiledFilters(filterEngine, filters);
+
+        for (String subject : TEXTS) {
+            for (String comment : TEXTS) {
+                assertSameMatches(compiled, filters, post(subject, comment));
+            }
+        }
+    }
+
+    @Test
+    public void exactFields() {
+        List<Filter> filters = Arrays.asList(
+                filter(FilterType.TRIPCODE.flag, "!!abc"),
+                filter(FilterType.NAME.flag, "Anonymous"),
+                filter(FilterType.NAME.flag, "anonymous"),
+                filter(FilterType.ID.flag, "ABC123"),
+                filter(FilterType.NAME.flag | FilterType.ID.flag, "ABC123"));
+        CompiledFilters compiled = new CompiledFilters(filterEngine, filters);
+
+        String[] values = {"", "!!abc", "Anonymous", "anonymous", "ABC123", "abc123"};
+        for (String tripcode : values) {
+            for (String name : values) {
+                for (String id : values) {
+                    Post.Builder post = post("", "").tripcode(tripcode).name(name).posterId(id);
+                    assertSameMatches(compiled, filters, post);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void randomTextsMatchLikeRegex() {
+        Random random = new Random(42);
+        String[] words = {"cat", "Cat", "at", "foo", "bar", "sing", "ing", "un", "hello",
+                "world", "ab", "bbc", "dog", "x", "word", "c++", " ", " ", ".", "'"};
+
+        List<Filter> filters = new ArrayList<>();
+        for (String pattern : PATTERNS) {
+            filters.add(filter(REGEX_TYPES, pattern));
+        }
+        CompiledFilters compiled = new CompiledFilters(filterEngine, filters);
+
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                text.append(words[random.nextInt(words.length)]);
+            }
+            assertSameMatches(compiled, filters, post("", text.toString()));
+        }
+    }
+
+    private void assertSameMatches(CompiledFilters compiled, List<Filter> filters,
+                                   Post.Builder post) {
+        List<Filter> expected = new ArrayList<>();
+        for (Filter filter : filters) {
+            if (filterEngine.matches(filter, post)) {
+                expected.add(filter);
+            }
+        }
+
+        assertEquals("Subject \"" + post.subject + "\", comment \"" + post.comment + "\"",
+                describe(expected), describe(compiled.match(post)));
+    }
+
+    private static List<String> describe(List<Filter> filters) {
+        List<String> result = new ArrayList<>(filters.size());
+        for (Filter filter : filters) {
+            result.add(filter.type + ":" + filter.pattern);
+        }
+        return result;
+    }
+
+    private static Filter filter(int type, String pattern) {
+        Filter filter = new Filter();
+        filter.type = type;
+        filter.pattern = pattern;
+        filter.action = FilterEngine.FilterAction.HIDE.id;
+        return filter;
+    }
+
+    private static Post.Builder post(String subject, String comment) {
+        return new Post.Builder()
+                .subject(subject)
+                .comment(comment);
+    }
+}
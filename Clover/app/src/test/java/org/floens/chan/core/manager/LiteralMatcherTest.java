@@ -0,0 +1,173 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * The {@link LiteralMatcher} must find the same literals as a case insensitive
+ * {@link Pattern} of each literal, which it replaces for the word and phrase filters.
+ */
+public class LiteralMatcherTest {
+    @Test
+    public void followsFailLinks() {
+        LiteralMatcher matcher = build("he", "she", "his", "hers");
+
+        assertMatches(matcher, "ushers", 0, 1, 3);
+        assertMatches(matcher, "ahishers", 0, 1, 2, 3);
+        assertMatches(matcher, "hhhis", 2);
+    }
+
+    @Test
+    public void followsFailLinkToDeeperNode() {
+        // After "abc" fails on 'e' the matcher continues from "bc", not from the root.
+        LiteralMatcher matcher = build("abcd", "bce");
+
+        assertMatches(matcher, "abce", 1);
+        assertMatches(matcher, "abcd", 0);
+        assertMatches(matcher, "abcabcd", 0);
+    }
+
+    @Test
+    public void findsOverlappingMatches() {
+        LiteralMatcher matcher = build("a", "aa", "aaa", "ab");
+
+        assertMatches(matcher, "a", 0);
+        assertMatches(matcher, "aaa", 0, 1, 2);
+        assertMatches(matcher, "aab", 0, 1, 3);
+        assertMatches(matcher, "b");
+    }
+
+    @Test
+    public void collectsOutputsOfTheFailChain() {
+        // "c" only ends inside "abc", its id comes from the fail chain of that node.
+        LiteralMatcher matcher = build("abc", "bc", "c");
+
+        assertMatches(matcher, "abc", 0, 1, 2);
+        assertMatches(matcher, "xbc", 1, 2);
+        assertMatches(matcher, "ab");
+    }
+
+    @Test
+    public void sameLiteralWithTwoIds() {
+        LiteralMatcher matcher = new LiteralMatcher.Builder()
+                .add("spam", 3)
+                .add("SPAM", 7)
+                .build();
+
+        assertMatches(matcher, "no Spam here", 3, 7);
+    }
+
+    @Test
+    public void foldsAsciiCaseOnly() {
+        LiteralMatcher matcher = build("Foo", "\u00e9t\u00e9");
+
+        assertMatches(matcher, "fOO", 0);
+        assertMatches(matcher, "FOOBAR", 0);
+        assertMatches(matcher, "\u00e9T\u00e9", 1);
+        // Like CASE_INSENSITIVE without UNICODE_CASE.
+        assertMatches(matcher, "\u00c9T\u00c9");
+        assertFalse(Pattern.compile(Pattern.quote("\u00e9t\u00e9"), Pattern.CASE_INSENSITIVE)
+                .matcher("\u00c9T\u00c9").find());
+    }
+
+    @Test
+    public void findsLiteralsAcrossWordBoundaries() {
+        // The literals are candidates only, the \b of a word filter is checked by its pattern.
+        LiteralMatcher matcher = build("cat", "c++");
+
+        assertMatches(matcher, "concatenate", 0);
+        assertMatches(matcher, "the cat sat", 0);
+        assertMatches(matcher, "c++17", 1);
+    }
+
+    @Test
+    public void emptyBuilder() {
+        LiteralMatcher.Builder builder = new LiteralMatcher.Builder();
+        assertTrue(builder.isEmpty());
+        assertMatches(builder.build(), "anything");
+
+        assertFalse(builder.add("x", 0).isEmpty());
+    }
+
+    @Test
+    public void matchesLikeRegex() {
+        Random random = new Random(42);
+        char[] alphabet = {'a', 'b', 'c', 'A', 'B', ' '};
+
+        for (int round = 0; round < 200; round++) {
+            String[] literals = new String[1 + random.nextInt(8)];
+            for (int i = 0; i < literals.length; i++) {
+                literals[i] = randomString(random, alphabet, 1 + random.nextInt(4));
+            }
+            LiteralMatcher matcher = build(literals);
+
+            for (int text = 0; text < 20; text++) {
+                String input = randomString(random, alphabet, random.nextInt(30));
+
+                BitSet expected = new BitSet();
+                for (int i = 0; i < literals.length; i++) {
+                    if (Pattern.compile(Pattern.quote(literals[i]), Pattern.CASE_INSENSITIVE)
+                            .matcher(input).find()) {
+                        expected.set(i);
+                    }
+                }
+
+                BitSet actual = new BitSet();
+                matcher.match(input, actual);
+                assertEquals("Literals " + String.join(",", literals) + " in \"" + input + "\"",
+                        expected, actual);
+            }
+        }
+    }
+
+    private static LiteralMatcher build(String... literals) {
+        LiteralMatcher.Builder builder = new LiteralMatcher.Builder();
+        for (int i = 0; i < literals.length; i++) {
+            builder.add(literals[i], i);
+        }
+        return builder.build();
+    }
+
+    private static void assertMatches(LiteralMatcher matcher, String text, int... ids) {
+        BitSet expected = new BitSet();
+        for (int id : ids) {
+            expected.set(id);
+        }
+
+        BitSet actual = new BitSet();
+        matcher.match(text, actual);
+        assertEquals("Matches in \"" + text + "\"", expected, actual);
+    }
+
+    private static String randomString(Random random, char[] alphabet, int length) {
+        StringBuilder result = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            result.append(alphabet[random.nextInt(alphabet.length)]);
+        }
+        return result.toString();
+    }
+}
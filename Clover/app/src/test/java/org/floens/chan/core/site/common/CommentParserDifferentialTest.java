@@ -0,0 +1,264 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.site.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.app.Application;
+import android.text.Spanned;
+import android.text.style.AbsoluteSizeSpan;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.StrikethroughSpan;
+import android.text.style.StyleSpan;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.floens.chan.R;
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.PostLinkable;
+import org.floens.chan.core.model.orm.Board;
+import org.floens.chan.core.site.Site;
+import org.floens.chan.core.site.common.vichan.VichanCommentParser;
+import org.floens.chan.core.site.parser.CommentParser;
+import org.floens.chan.core.site.parser.CommentTokenizer;
+import org.floens.chan.core.site.parser.PostParser;
+import org.floens.chan.core.site.sites.chan4.Chan4;
+import org.floens.chan.ui.theme.Theme;
+import org.floens.chan.ui.theme.ThemeHelper;
+import org.floens.chan.utils.AndroidUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs comments of the supported site types through both the {@link CommentTokenizer} and the
+ * Jsoup path of the {@link DefaultPostParser}, the text, spans, linkables and replies must be
+ * the same.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, application = Application.class)
+public class CommentParserDifferentialTest {
+    private static final int OP_NO = 123;
+    private static final int SAVED_NO = 777;
+
+    private static final String[] CHAN4_COMMENTS = {
+            // Quotelinks, to OP and to a saved reply.
+            "<a href=\"#p12345\" class=\"quotelink\">&gt;&gt;12345</a><br>Agreed.",
+            "<a href=\"#p123\" class=\"quotelink\">&gt;&gt;123</a><br><a href=\"#p777\" class=\"quotelink\">&gt;&gt;777</a><br>both of you",
+            "<a href=\"/g/thread/123#p456\" class=\"quotelink\">&gt;&gt;456</a> same board",
+            "<a href=\"/a/thread/789#p790\" class=\"quotelink\">&gt;&gt;&gt;/a/790</a> cross board",
+            "<a href=\"//boards.4channel.org/v/thread/1#p2\" class=\"quotelink\">&gt;&gt;&gt;/v/2</a>",
+            // Deadlinks.
+            "<span class=\"deadlink\">&gt;&gt;99999</span><br>gone",
+            "<span class=\"deadlink\">&gt;&gt;&gt;/v/12345</span>",
+            // Greentext and spoilers.
+            "<span class=\"quote\">&gt;implying</span><br>text after",
+            "<s>spoiler text</s> and <s>another <b>bold</b> one</s>",
+            "<s>unclosed spoiler",
+            // The abbr span keeps its text and the links inside it.
+            "first line<br><span class=\"abbr\">Comment too long. Click <a href=\"/g/thread/123#p124\">here</a> to view the full text.</span>",
+            "<span class=\"abbr\">[EXIF data available. Click <a href=\"javascript:void(0)\">here</a> to show/hide.]</span>",
+            // Fortune.
+            "text<span class=\"fortune\" style=\"color:#0893e1\"><br><br><b>Your fortune: Good Luck</b></span>",
+            // Wbr, entities and bare urls.
+            "https://example.com/a<wbr>very<wbr>long/path?x=1&amp;y=2 see",
+            "&quot;quoted&quot; &amp; &#039;apos&#039; &lt;not a tag&gt; &gt;&gt;1 &hellip;",
+            "check www.example.org and http://example.net/page.html, then <a href=\"https://example.com/\">https://example.com/</a>",
+            "text   with\n  collapsed\twhitespace <b>bold</b> <strong>strong</strong> <i>i</i> <em>em</em> <u>u</u>",
+    };
+
+    private static final String[] VICHAN_COMMENTS = {
+            "<a onclick=\"highlightReply('456', event);\" href=\"/b/res/123.html#456\">&gt;&gt;456</a><br>reply",
+            "<a onclick=\"highlightReply('123', event);\" href=\"/b/res/123.html#123\">&gt;&gt;123</a> OP",
+            "<a href=\"/a/res/55.html#60\">&gt;&gt;&gt;/a/60</a> elsewhere",
+            "<span class=\"quote\">&gt;greentext</span><br><span class=\"spoiler\">hidden</span>",
+            "<span class=\"heading\">Heading</span><br><strong>strong</strong> <em>em</em> <s>struck</s>",
+            "<span class=\"deadlink\">&gt;&gt;1</span> not on 4chan",
+            "<a href=\"https://example.com/?a=1&amp;b=2\" rel=\"nofollow\" target=\"_blank\">https://example.com/?a=1&amp;b=2</a>",
+            "bare http://example.org/x<wbr>y and &lt;3 &amp; &#x27;hex&#x27;",
+            "<span class=\"abbr\">abbr <a href=\"/b/res/123.html#5\">&gt;&gt;5</a> text</span>",
+    };
+
+    private static final String[] FUTABA_COMMENTS = {
+            "<a href=\"#p100\" class=\"quotelink\">&gt;&gt;100</a><br>hi",
+            "<span class=\"deadlink\">&gt;&gt;5</span>",
+            "<span class=\"quote\">&gt;be me</span><br><span class=\"quote\">&gt;parse html</span>",
+            "<s>spoiler</s><wbr>joined",
+            "<span class=\"abbr\">Comment too long. Click <a href=\"/b/thread/1#p2\">here</a></span>",
+            "&gt;&gt;not a link &amp;amp; https://example.com/&amp;",
+    };
+
+    private final PostParser.Callback callback = new PostParser.Callback() {
+        @Override
+        public boolean isSaved(int postNo) {
+            return postNo == SAVED_NO;
+        }
+
+        @Override
+        public boolean isInternal(int postNo) {
+            return postNo != 60 && postNo != 2;
+        }
+    };
+
+    private Theme theme;
+
+    @Before
+    public void setUp() {
+        AndroidUtils.init(ApplicationProvider.getApplicationContext());
+        theme = new Theme("Light", "light", R.style.Chan_Theme, ThemeHelper.PrimaryColor.BLUE);
+    }
+
+    @Test
+    public void chan4CommentsMatchJsoup() {
+        CommentParser commentParser = new CommentParser();
+        commentParser.addDefaultRules();
+        commentParser.addInternalDomain("boards.4chan.org");
+        commentParser.addInternalDomain("boards.4channel.org");
+
+        Board board = Board.fromSiteNameCode(new Chan4(), "Technology", "g");
+        for (String comment : CHAN4_COMMENTS) {
+            assertSameParse(commentParser, board, comment);
+        }
+    }
+
+    @Test
+    public void vichanCommentsMatchJsoup() {
+        Board board = Board.fromSiteNameCode(otherSite(), "Random", "b");
+        for (String comment : VICHAN_COMMENTS) {
+            assertSameParse(new VichanCommentParser(), board, comment);
+        }
+    }
+
+    @Test
+    public void futabaCommentsMatchJsoup() {
+        CommentParser commentParser = new CommentParser();
+        commentParser.addDefaultRules();
+
+        Board board = Board.fromSiteNameCode(otherSite(), "Random", "b");
+        for (String comment : FUTABA_COMMENTS) {
+            assertSameParse(commentParser, board, comment);
+        }
+    }
+
+    @Test
+    public void blockMarkupFallsBack() {
+        CommentParser commentParser = new VichanCommentParser();
+        Board board = Board.fromSiteNameCode(otherSite(), "Random", "b");
+
+        assertNull(new CommentTokenizer(commentParser).parse(theme, newPost(board),
+                "<p class=\"body-line ltr quote\">&gt;text</p>", callback));
+        assertNull(new CommentTokenizer(commentParser).parse(theme, newPost(board),
+                "<a href=\"#p1\">nested <a href=\"#p2\">anchor</a></a>", callback));
+    }
+
+    private void assertSameParse(CommentParser commentParser, Board board, String comment) {
+        Post.Builder jsoupPost = newPost(board);
+        CharSequence jsoup = new DefaultPostParser(commentParser)
+                .parseCommentWithJsoup(theme, jsoupPost, comment, callback);
+
+        Post.Builder tokenizedPost = newPost(board);
+        CharSequence tokenized = new CommentTokenizer(commentParser)
+                .parse(theme, tokenizedPost, comment, callback);
+
+        assertNotNull("Tokenizer fell back for " + comment, tokenized);
+        assertEquals("Text of " + comment, jsoup.toString(), tokenized.toString());
+        assertEquals("Spans of " + comment, describeSpans(jsoup), describeSpans(tokenized));
+        assertEquals("Linkables of " + comment,
+                describeLinkables(jsoupPost.getLinkables()),
+                describeLinkables(tokenizedPost.getLinkables()));
+        assertArrayEquals("Replies of " + comment,
+                build(jsoupPost).getRepliesTo(), build(tokenizedPost).getRepliesTo());
+    }
+
+    private static Site otherSite() {
+        Site site = mock(Site.class);
+        when(site.id()).thenReturn(1);
+        return site;
+    }
+
+    private static Post.Builder newPost(Board board) {
+        return new Post.Builder()
+                .board(board)
+                .id(1000)
+                .opId(OP_NO)
+                .setUnixTimestampSeconds(0);
+    }
+
+    private static Post build(Post.Builder builder) {
+        builder.comment("");
+        return builder.build();
+    }
+
+    private static List<String> describeSpans(CharSequence text) {
+        List<String> spans = new ArrayList<>();
+        if (text instanceof Spanned) {
+            Spanned spanned = (Spanned) text;
+            for (Object span : spanned.getSpans(0, spanned.length(), Object.class)) {
+                spans.add(spanned.getSpanStart(span) + "-" + spanned.getSpanEnd(span) + " "
+                        + describeSpan(span));
+            }
+        }
+        // The nesting order of equal spans may differ between the two.
+        Collections.sort(spans);
+        return spans;
+    }
+
+    private static String describeSpan(Object span) {
+        if (span instanceof PostLinkable) {
+            return describeLinkable((PostLinkable) span);
+        } else if (span instanceof ForegroundColorSpan) {
+            return "color " + Integer.toHexString(((ForegroundColorSpan) span).getForegroundColor());
+        } else if (span instanceof AbsoluteSizeSpan) {
+            return "size " + ((AbsoluteSizeSpan) span).getSize();
+        } else if (span instanceof StyleSpan) {
+            return "style " + ((StyleSpan) span).getStyle();
+        } else if (span instanceof StrikethroughSpan) {
+            return "strikethrough";
+        } else {
+            return span.getClass().getName();
+        }
+    }
+
+    private static List<String> describeLinkables(List<PostLinkable> linkables) {
+        List<String> descriptions = new ArrayList<>(linkables.size());
+        for (PostLinkable linkable : linkables) {
+            descriptions.add(describeLinkable(linkable));
+        }
+        return descriptions;
+    }
+
+    private static String describeLinkable(PostLinkable linkable) {
+        Object value = linkable.value;
+        if (value instanceof PostLinkable.ThreadLink) {
+            PostLinkable.ThreadLink link = (PostLinkable.ThreadLink) value;
+            value = link.board + "/" + link.threadId + "/" + link.postId;
+        }
+        return "linkable " + linkable.type + " '" + linkable.key + "' " + value;
+    }
+}